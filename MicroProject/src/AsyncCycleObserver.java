@@ -0,0 +1,60 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Delivers cycle deltas to another observer on its own thread, through a bounded
+// queue. When the consumer falls behind and the queue fills up, onCycle blocks the
+// simulation thread until there is room again: nothing is dropped and the memory
+// held by the backlog stays bounded
+public class AsyncCycleObserver implements TomasuloSimulator.CycleObserver {
+    private final BlockingQueue<CycleDelta> queue;
+    private final TomasuloSimulator.CycleObserver target;
+    private final Thread consumer;
+    private volatile boolean closed = false;
+
+    public AsyncCycleObserver(TomasuloSimulator.CycleObserver target, int capacity) {
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        consumer = new Thread(this::deliver, "cycle-observer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @Override
+    public void onCycle(CycleDelta delta) {
+        if (closed) return;
+        try {
+            queue.put(delta);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver() {
+        try {
+            while (!closed) {
+                CycleDelta delta = queue.take();
+                try {
+                    target.onCycle(delta);
+                } catch (RuntimeException e) {
+                    // One failing delta should not stop the ones after it
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    // Deltas waiting for the consumer
+    public int backlog() {
+        return queue.size();
+    }
+
+    // Stops the consumer and drops anything still queued, which also releases a
+    // simulation thread blocked on a full queue. Unsubscribe from the simulator first
+    public void close() {
+        closed = true;
+        consumer.interrupt();
+        queue.clear();
+    }
+}
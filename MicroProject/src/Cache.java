@@ -1,35 +1,115 @@
+import java.nio.ByteBuffer;
 import java.util.*;
 
-public class Cache {
-    public static class CacheBlock {
-        public boolean valid;
-        public int tag;
-        public byte[] data;
-        
-        public CacheBlock(int blockSize) {
-            this.valid = false;
-            this.tag = -1;
-            this.data = new byte[blockSize];
-        }
-    }
-    
+public class Cache implements Undoable {
     private int cacheSize;      // Total cache size in bytes
     private int blockSize;      // Block size in bytes
     private int numBlocks;      // Number of blocks in cache
-    private CacheBlock[] blocks;
+    
+    // Per-block metadata, indexed by block number
+    private boolean[] valid;
+    private int[] tags;
+    private boolean[] prefetched;   // filled by a prefetch and not yet used by a demand access
+    private char[] states;          // coherence state M, E or S when shared with other cores
+    
+    // Block i occupies data[i * blockSize .. (i + 1) * blockSize). Allocated on the
+    // first fill, so caches that are configured large but barely used stay cheap
+    private byte[] data;
+    private ByteBuffer view;   // big-endian view over data for word and doubleword access
+    private byte[] swapBuffer;      // holds an evicted block while the victim cache swaps
+    
+    // Blocks whose valid bit or tag changed since the GUI last drained the set
+    private BitSet dirtyBlocks = new BitSet();
+    
+    // Blocks and word addresses read or written in the current cycle, for highlighting
+    private BitSet touchedBlocks = new BitSet();
+    private Set<Integer> touchedWords = new HashSet<>();
+    
+    // Blocks installed and evicted in the current cycle, for the simulator's cycle delta
+    private List<Integer> filledBlocks = new ArrayList<>();
+    private List<Integer> evictedBlocks = new ArrayList<>();
     
     private Memory memory;
     
+    // Outstanding block fills (MSHRs): block address -> cycle the data arrives,
+    // or FILL_IN_MEMORY while the memory controller is still serving it
+    private static final int FILL_IN_MEMORY = Integer.MAX_VALUE;
+    private Map<Integer, Integer> pendingFills = new LinkedHashMap<>();
+    private Set<Integer> pendingPrefetches = new HashSet<>();
+    public int mshrs = 4;
+    public int missPenalty = 10;
+    public Prefetcher prefetcher = null;
+    
+    // Bank/row-buffer memory timing; null means every miss costs missPenalty
+    public MemoryController memoryController = null;
+    
+    // Coherent private L1 in a multi-core system; null for a single core
+    public CoherenceBus bus = null;
+    public int coreId = 0;
+    private Map<Integer, Character> pendingStates = new HashMap<>();
+    
+    // Optional fully-associative victim cache between this cache and memory
+    public VictimCache victimCache = null;
+    public int victimHitLatency = 1;
+    
+    // Prefetch statistics
+    public int demandMisses = 0;
+    public int prefetchesIssued = 0;
+    public int prefetchesDropped = 0;   // no free MSHR
+    public int usefulPrefetches = 0;    // later used by a demand access
+    public int latePrefetches = 0;      // demand access arrived while still in flight
+    public int uselessPrefetches = 0;   // evicted without being used
+    public int mshrStalls = 0;          // demand accesses held back because every MSHR was busy
+    
+    // Told before a block's metadata or bytes change, so the old block can be kept
+    public interface BlockObserver {
+        void beforeBlockChange(int index);
+    }
+    private BlockObserver blockObserver;
+    
+    // Step-back history for the counters, MSHRs and touched sets (null = none)
+    private SimulationHistory history;
+    private static final int DEMAND_MISSES = 0;
+    private static final int PREFETCHES_ISSUED = 1;
+    private static final int PREFETCHES_DROPPED = 2;
+    private static final int USEFUL_PREFETCHES = 3;
+    private static final int LATE_PREFETCHES = 4;
+    private static final int USELESS_PREFETCHES = 5;
+    private static final int MSHR_STALLS = 6;
+    private static final int MSHRS = 7;          // fills, their states and the prefetches among them
+    private static final int TOUCHED = 8;
+    
+    // One block's metadata and bytes, kept by the step-back history
+    public static final class Block {
+        final int index;
+        final boolean valid, prefetched;
+        final int tag;
+        final char state;
+        final byte[] data;     // null while the cache has no data array yet
+        
+        private Block(Cache c, int index) {
+            this.index = index;
+            valid = c.valid[index];
+            prefetched = c.prefetched[index];
+            tag = c.tags[index];
+            state = c.states[index];
+            data = c.data == null ? null 
+                 : Arrays.copyOfRange(c.data, index * c.blockSize, (index + 1) * c.blockSize);
+        }
+    }
+    
     public Cache(int cacheSize, int blockSize, Memory memory) {
         this.cacheSize = cacheSize;
         this.blockSize = blockSize;
         this.numBlocks = cacheSize / blockSize;
-        this.blocks = new CacheBlock[numBlocks];
         this.memory = memory;
         
-        for (int i = 0; i < numBlocks; i++) {
-            blocks[i] = new CacheBlock(blockSize);
-        }
+        valid = new boolean[numBlocks];
+        tags = new int[numBlocks];
+        prefetched = new boolean[numBlocks];
+        states = new char[numBlocks];
+        Arrays.fill(tags, -1);
+        Arrays.fill(states, 'I');
     }
     
     // Direct-mapped cache: address maps to index = (address / blockSize) % numBlocks
@@ -39,7 +119,7 @@ public class Cache {
         int index = blockAddress % numBlocks;
         int tag = blockAddress;
         
-        return blocks[index].valid && blocks[index].tag == tag;
+        return valid[index] && tags[index] == tag;
     }
     
     public void access(int address) {
@@ -55,65 +135,564 @@ public class Cache {
         int index = blockAddress % numBlocks;
         int tag = blockAddress;
         
-        // Fetch entire block from memory
-        CacheBlock block = blocks[index];
-        block.valid = true;
-        block.tag = tag;
+        if (data == null) {
+            data = new byte[numBlocks * blockSize];
+            view = ByteBuffer.wrap(data);
+        }
+        int offset = index * blockSize;
+        changing(index);
         
-        for (int i = 0; i < blockSize; i++) {
-            block.data[i] = memory.mem[blockStartAddr + i];
+        if (valid[index] && prefetched[index]) {
+            saving(USELESS_PREFETCHES, uselessPrefetches);
+            uselessPrefetches++;
+        }
+        
+        // The block being replaced goes to the victim cache, and the requested one
+        // comes from there if present (a swap), otherwise from memory
+        boolean evicted = false;
+        int evictedBlockAddress = tags[index];
+        if (valid[index]) {
+            evictedBlocks.add(evictedBlockAddress);
+        }
+        filledBlocks.add(blockAddress);
+        if (victimCache != null && valid[index]) {
+            if (swapBuffer == null) {
+                swapBuffer = new byte[blockSize];
+            }
+            System.arraycopy(data, offset, swapBuffer, 0, blockSize);
+            evicted = true;
+        }
+        
+        valid[index] = true;
+        prefetched[index] = false;
+        states[index] = 'S';
+        tags[index] = tag;
+        dirtyBlocks.set(index);
+        
+        if (victimCache == null || !victimCache.take(blockAddress, data, offset)) {
+            // Fetch entire block from memory
+            memory.readBlock(blockStartAddr, data, offset, blockSize);
+        }
+        
+        if (evicted) {
+            victimCache.insert(evictedBlockAddress, swapBuffer, 0);
         }
     }
     
-    public int loadWord(int address) {
-        access(address);
+    // Timing side of a demand access: returns extra cycles known up front (victim cache
+    // swaps) and starts or joins a fill on a miss; callers wait on isFillPending()
+    // for the block itself. Also lets the prefetcher react to the access
+    public int timedAccess(int pc, int address, int cycle) {
+        return timedAccess(pc, address, cycle, false);
+    }
+    
+    public int timedAccess(int pc, int address, int cycle, boolean write) {
+        int blockAddress = address / blockSize;
+        int index = blockAddress % numBlocks;
+        int extra;
+        touching();
+        touchedBlocks.set(index);
         
-        // After access, data is in cache
+        if (isHit(address)) {
+            if (prefetched[index]) {
+                changing(index);
+                prefetched[index] = false;
+                saving(USEFUL_PREFETCHES, usefulPrefetches);
+                usefulPrefetches++;
+            }
+            extra = 0;
+            
+            // A write to a coherent block needs exclusive ownership first
+            if (bus != null && write && !pendingFills.containsKey(blockAddress)) {
+                if (states[index] == 'E') {
+                    changing(index);
+                    states[index] = 'M';
+                } else if (states[index] == 'S') {
+                    changingFills();
+                    pendingFills.put(blockAddress, FILL_IN_MEMORY);
+                    bus.request(coreId, blockAddress, CoherenceBus.RequestType.UPGRADE);
+                }
+            }
+        } else if (victimCache != null && victimCache.contains(blockAddress)) {
+            // Conflict miss recovered from the victim cache: swap the block back in now
+            victimCache.countHit();
+            extra = victimHitLatency;
+            fetchBlock(address);
+        } else if (pendingFills.containsKey(blockAddress)) {
+            // Merge into the fill already in flight for this block
+            extra = 0;
+            if (pendingPrefetches.contains(blockAddress)) {
+                changingFills();
+                pendingPrefetches.remove(blockAddress);
+                saving(USEFUL_PREFETCHES, usefulPrefetches);
+                usefulPrefetches++;
+                saving(LATE_PREFETCHES, latePrefetches);
+                latePrefetches++;
+            }
+        } else {
+            saving(DEMAND_MISSES, demandMisses);
+            demandMisses++;
+            extra = 0;
+            startFill(blockAddress, cycle, write);
+        }
+        
+        if (prefetcher != null) {
+            boolean miss = !isHit(address) || extra > 0;
+            for (int target : prefetcher.onAccess(pc, address, miss)) {
+                issuePrefetch(target, cycle);
+            }
+        }
+        return extra;
+    }
+    
+    private void issuePrefetch(int address, int cycle) {
+        if (address < 0 || address + blockSize > memory.size()) return;
+        int blockAddress = address / blockSize;
+        if (isHit(address) || pendingFills.containsKey(blockAddress)) return;
+        if (victimCache != null && victimCache.contains(blockAddress)) return;
+        
+        // Prefetches share the MSHRs with demand misses and are dropped when all are busy
+        if (pendingFills.size() >= mshrs) {
+            saving(PREFETCHES_DROPPED, prefetchesDropped);
+            prefetchesDropped++;
+            return;
+        }
+        startFill(blockAddress, cycle, false);
+        pendingPrefetches.add(blockAddress);
+        saving(PREFETCHES_ISSUED, prefetchesIssued);
+        prefetchesIssued++;
+    }
+    
+    private void startFill(int blockAddress, int cycle, boolean write) {
+        changingFills();
+        if (bus != null) {
+            pendingFills.put(blockAddress, FILL_IN_MEMORY);
+            bus.request(coreId, blockAddress, write ? CoherenceBus.RequestType.READX : CoherenceBus.RequestType.READ);
+        } else if (memoryController != null) {
+            pendingFills.put(blockAddress, FILL_IN_MEMORY);
+            memoryController.enqueue(blockAddress, cycle);
+        } else {
+            pendingFills.put(blockAddress, cycle + missPenalty);
+        }
+    }
+    
+    // A demand access that needs a new fill can only start with a free MSHR; callers
+    // retry it in a later cycle. Hits, merges and victim cache swaps need none
+    public boolean mshrsFull(int address) {
         int blockAddress = address / blockSize;
+        return pendingFills.size() >= mshrs && !isHit(address) && !pendingFills.containsKey(blockAddress)
+            && !(victimCache != null && victimCache.contains(blockAddress));
+    }
+    
+    public boolean isFillPending(int address) {
+        return pendingFills.containsKey(address / blockSize);
+    }
+    
+    // Called by the coherence bus once it has decided when the block arrives and in which state
+    public void completeFill(int blockAddress, int readyCycle, char state) {
+        if (pendingFills.containsKey(blockAddress)) {
+            changingFills();
+            pendingFills.put(blockAddress, readyCycle);
+            pendingStates.put(blockAddress, state);
+        }
+    }
+    
+    public char snoopState(int blockAddress) {
         int index = blockAddress % numBlocks;
-        int offsetInBlock = address % blockSize;
+        return (valid[index] && tags[index] == blockAddress) ? states[index] : 'I';
+    }
+    
+    public boolean snoopInvalidate(int blockAddress) {
+        boolean held = false;
+        int index = blockAddress % numBlocks;
+        if (valid[index] && tags[index] == blockAddress) {
+            changing(index);
+            valid[index] = false;
+            states[index] = 'I';
+            dirtyBlocks.set(index);
+            held = true;
+        }
+        if (victimCache != null && victimCache.remove(blockAddress)) {
+            held = true;
+        }
+        return held;
+    }
+    
+    public void snoopDowngrade(int blockAddress) {
+        int index = blockAddress % numBlocks;
+        if (valid[index] && tags[index] == blockAddress) {
+            changing(index);
+            states[index] = 'S';
+        }
+    }
+    
+    public void setBlockObserver(BlockObserver observer) {
+        this.blockObserver = observer;
+    }
+    
+    private void changing(int index) {
+        if (blockObserver != null) blockObserver.beforeBlockChange(index);
+    }
+    
+    public Block saveBlock(int index) {
+        return new Block(this, index);
+    }
+    
+    // Puts a saved block back; the block observer is not told
+    public void restoreBlock(Block b) {
+        int i = b.index;
+        valid[i] = b.valid;
+        prefetched[i] = b.prefetched;
+        tags[i] = b.tag;
+        states[i] = b.state;
+        if (b.data != null) {
+            if (data == null) {
+                data = new byte[numBlocks * blockSize];
+                view = ByteBuffer.wrap(data);
+            }
+            System.arraycopy(b.data, 0, data, i * blockSize, blockSize);
+        } else if (data != null) {
+            Arrays.fill(data, i * blockSize, (i + 1) * blockSize, (byte) 0);
+        }
+        dirtyBlocks.set(i);
+    }
+    
+    public void setHistory(SimulationHistory history) {
+        this.history = history;
+        if (victimCache != null) victimCache.setHistory(history);
+        if (prefetcher != null) prefetcher.setHistory(history);
+        if (memoryController != null) memoryController.setHistory(history);
+    }
+    
+    private void saving(int counter, int old) {
+        if (history != null) history.saveField(this, counter, 0, old);
+    }
+    
+    public void countMshrStall() {
+        saving(MSHR_STALLS, mshrStalls);
+        mshrStalls++;
+    }
+    
+    // The MSHRs hold at most a few fills, so each change saves all of them
+    private void changingFills() {
+        if (history == null || !history.isRecording()) return;
+        int[] old = new int[3 + 2 * pendingFills.size() + 2 * pendingStates.size() + pendingPrefetches.size()];
+        int k = 0;
+        old[k++] = pendingFills.size();
+        for (Map.Entry<Integer, Integer> fill : pendingFills.entrySet()) {
+            old[k++] = fill.getKey();
+            old[k++] = fill.getValue();
+        }
+        old[k++] = pendingStates.size();
+        for (Map.Entry<Integer, Character> state : pendingStates.entrySet()) {
+            old[k++] = state.getKey();
+            old[k++] = state.getValue();
+        }
+        old[k++] = pendingPrefetches.size();
+        for (int blockAddress : pendingPrefetches) {
+            old[k++] = blockAddress;
+        }
+        history.saveEntry(this, MSHRS, 0, old);
+    }
+    
+    // Saves the touched blocks and words when a cycle clears them or starts to fill
+    // them again, so stepping back shows what the restored cycle touched
+    private void touching() {
+        if (touchedBlocks.isEmpty()) changingTouched();
+    }
+    
+    private void changingTouched() {
+        if (history == null || !history.isRecording()) return;
+        int blocks = touchedBlocks.cardinality();
+        int[] old = new int[1 + blocks + touchedWords.size()];
+        int k = 0;
+        old[k++] = blocks;
+        for (int i = touchedBlocks.nextSetBit(0); i >= 0; i = touchedBlocks.nextSetBit(i + 1)) {
+            old[k++] = i;
+        }
+        for (int address : touchedWords) {
+            old[k++] = address;
+        }
+        history.saveEntry(this, TOUCHED, 0, old);
+    }
+    
+    @Override
+    public void undoField(int field, int index, long old) {
+        int value = (int) old;
+        switch (field) {
+            case DEMAND_MISSES: demandMisses = value; break;
+            case PREFETCHES_ISSUED: prefetchesIssued = value; break;
+            case PREFETCHES_DROPPED: prefetchesDropped = value; break;
+            case USEFUL_PREFETCHES: usefulPrefetches = value; break;
+            case LATE_PREFETCHES: latePrefetches = value; break;
+            case USELESS_PREFETCHES: uselessPrefetches = value; break;
+            case MSHR_STALLS: mshrStalls = value; break;
+            default: throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+    
+    @Override
+    public void undoEntry(int field, int index, int[] old) {
+        int k = 0;
+        if (field == MSHRS) {
+            pendingFills.clear();
+            for (int n = old[k++]; n > 0; n--, k += 2) {
+                pendingFills.put(old[k], old[k + 1]);
+            }
+            pendingStates.clear();
+            for (int n = old[k++]; n > 0; n--, k += 2) {
+                pendingStates.put(old[k], (char) old[k + 1]);
+            }
+            pendingPrefetches.clear();
+            for (int n = old[k++]; n > 0; n--) {
+                pendingPrefetches.add(old[k++]);
+            }
+        } else {
+            touchedBlocks.clear();
+            for (int n = old[k++]; n > 0; n--) {
+                touchedBlocks.set(old[k++]);
+            }
+            touchedWords.clear();
+            while (k < old.length) {
+                touchedWords.add(old[k++]);
+            }
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+    
+    // Installs every block whose data arrived before this cycle and returns their addresses
+    public List<Integer> tick(int cycle) {
+        List<Integer> installed = new ArrayList<>();
+        for (int readyCycle : pendingFills.values()) {
+            if (readyCycle < cycle) {
+                changingFills();
+                break;
+            }
+        }
+        Iterator<Map.Entry<Integer, Integer>> it = pendingFills.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Integer> fill = it.next();
+            if (fill.getValue() >= cycle) continue;
+            
+            int blockAddress = fill.getKey();
+            // An upgrade only changes the state of the copy already held
+            if (!isHit(blockAddress * blockSize)) {
+                fetchBlock(blockAddress * blockSize);
+            }
+            Character state = pendingStates.remove(blockAddress);
+            if (state != null) {
+                changing(blockAddress % numBlocks);
+                states[blockAddress % numBlocks] = state;
+            }
+            if (pendingPrefetches.remove(blockAddress)) {
+                changing(blockAddress % numBlocks);
+                prefetched[blockAddress % numBlocks] = true;
+            }
+            installed.add(blockAddress);
+            it.remove();
+        }
         
-        CacheBlock block = blocks[index];
-        return ((block.data[offsetInBlock] & 0xFF) << 24) |
-               ((block.data[offsetInBlock + 1] & 0xFF) << 16) |
-               ((block.data[offsetInBlock + 2] & 0xFF) << 8) |
-               ((block.data[offsetInBlock + 3] & 0xFF));
+        // Blocks returned by the memory controller this cycle are installed next cycle
+        if (memoryController != null) {
+            for (int blockAddress : memoryController.tick(cycle)) {
+                if (pendingFills.containsKey(blockAddress)) {
+                    changingFills();
+                    pendingFills.put(blockAddress, cycle);
+                }
+            }
+        }
+        return installed;
+    }
+    
+    public List<String> getPrefetchStats() {
+        List<String> stats = new ArrayList<>();
+        int useful = usefulPrefetches;
+        stats.add("Prefetches issued: " + prefetchesIssued + ", dropped: " + prefetchesDropped);
+        stats.add(String.format("Accuracy: %.1f%%  Coverage: %.1f%%  Timely: %.1f%%",
+                prefetchesIssued == 0 ? 0.0 : 100.0 * useful / prefetchesIssued,
+                useful + demandMisses == 0 ? 0.0 : 100.0 * useful / (useful + demandMisses),
+                useful == 0 ? 0.0 : 100.0 * (useful - latePrefetches) / useful));
+        stats.add("Useless (evicted unused): " + uselessPrefetches);
+        return stats;
+    }
+    
+    public List<String> getVictimStats() {
+        List<String> stats = new ArrayList<>();
+        if (victimCache != null) {
+            stats.add("Victim cache: " + victimCache.size() + " entries, hits: " + victimCache.hits + 
+                      ", swaps: " + victimCache.swaps + ", insertions: " + victimCache.insertions);
+        }
+        return stats;
+    }
+    
+    public int loadWord(int address) {
+        access(address);
+        
+        // After access, data is in cache
+        touch(address, 4);
+        return view.getInt(dataOffset(address));
     }
     
     public void storeWord(int address, int value) {
         access(address);
         
         // Write-through: update both cache and memory
-        int blockAddress = address / blockSize;
-        int index = blockAddress % numBlocks;
-        int offsetInBlock = address % blockSize;
+        changing((address / blockSize) % numBlocks);
+        touch(address, 4);
+        view.putInt(dataOffset(address), value);
+        
+        // Write to memory as well (through the bus at the end of the cycle when coherent)
+        if (bus != null) {
+            states[(address / blockSize) % numBlocks] = 'M';
+            bus.postWrite(coreId, address, value, false);
+        } else {
+            memory.storeWord(address, value);
+        }
+    }
+    
+    // 64-bit access; a doubleword straddling two blocks is split into its two words
+    public long loadDoubleword(int address) {
+        if (address % blockSize + 8 > blockSize) {
+            return ((long) loadWord(address) << 32) | (loadWord(address + 4) & 0xFFFFFFFFL);
+        }
+        access(address);
+        touch(address, 8);
+        return view.getLong(dataOffset(address));
+    }
+    
+    public void storeDoubleword(int address, long value) {
+        if (address % blockSize + 8 > blockSize) {
+            storeWord(address, (int) (value >>> 32));
+            storeWord(address + 4, (int) value);
+            return;
+        }
+        access(address);
         
-        CacheBlock block = blocks[index];
-        block.data[offsetInBlock] = (byte) ((value >> 24) & 0xFF);
-        block.data[offsetInBlock + 1] = (byte) ((value >> 16) & 0xFF);
-        block.data[offsetInBlock + 2] = (byte) ((value >> 8) & 0xFF);
-        block.data[offsetInBlock + 3] = (byte) (value & 0xFF);
+        changing((address / blockSize) % numBlocks);
+        touch(address, 8);
+        view.putLong(dataOffset(address), value);
         
-        // Write to memory as well
-        memory.storeWord(address, value);
+        if (bus != null) {
+            states[(address / blockSize) % numBlocks] = 'M';
+            bus.postWrite(coreId, address, value, true);
+        } else {
+            memory.storeDoubleword(address, value);
+        }
+    }
+    
+    // IEEE-754 values travel as the raw bits of a word or doubleword
+    public float loadFloat(int address) {
+        return Float.intBitsToFloat(loadWord(address));
+    }
+    
+    public void storeFloat(int address, float value) {
+        storeWord(address, Float.floatToRawIntBits(value));
+    }
+    
+    public double loadDouble(int address) {
+        return Double.longBitsToDouble(loadDoubleword(address));
+    }
+    
+    public void storeDouble(int address, double value) {
+        storeDoubleword(address, Double.doubleToRawLongBits(value));
+    }
+    
+    private void touch(int address, int width) {
+        touching();
+        touchedBlocks.set((address / blockSize) % numBlocks);
+        for (int a = address & ~3; a < address + width; a += 4) {
+            touchedWords.add(a);
+        }
+    }
+    
+    public void clearTouched() {
+        if (!touchedBlocks.isEmpty()) {
+            changingTouched();
+        }
+        touchedBlocks.clear();
+        touchedWords.clear();
+        filledBlocks.clear();
+        evictedBlocks.clear();
+    }
+    
+    public List<Integer> getFilledBlocks() {
+        return new ArrayList<>(filledBlocks);
+    }
+    
+    public List<Integer> getEvictedBlocks() {
+        return new ArrayList<>(evictedBlocks);
+    }
+    
+    public BitSet getTouchedBlocks() {
+        return (BitSet) touchedBlocks.clone();
+    }
+    
+    public Set<Integer> getTouchedWords() {
+        return new HashSet<>(touchedWords);
+    }
+    
+    // Position of a cached address within the flat data array
+    private int dataOffset(int address) {
+        return ((address / blockSize) % numBlocks) * blockSize + address % blockSize;
+    }
+    
+    public BitSet drainDirtyBlocks() {
+        BitSet changed = dirtyBlocks;
+        dirtyBlocks = new BitSet();
+        return changed;
+    }
+    
+    public int getNumBlocks() {
+        return numBlocks;
+    }
+    
+    // One line of getCacheStatus(), for a single block
+    public String getBlockStatus(int index) {
+        return valid[index] ? "Block " + index + ": Valid, Tag=" + tags[index] : "Block " + index + ": Invalid";
+    }
+    
+    public boolean isBlockValid(int index) {
+        return valid[index];
+    }
+    
+    public int getBlockTag(int index) {
+        return tags[index];
+    }
+    
+    public char getBlockState(int index) {
+        return states[index];
+    }
+    
+    // Raw byte of a cached block, without counting as an access
+    public byte getBlockByte(int index, int offset) {
+        return data == null ? 0 : data[index * blockSize + offset];
     }
     
     public List<String> getCacheStatus() {
         List<String> status = new ArrayList<>();
         for (int i = 0; i < numBlocks; i++) {
-            CacheBlock block = blocks[i];
-            if (block.valid) {
-                status.add("Block " + i + ": Valid, Tag=" + block.tag);
-            } else {
-                status.add("Block " + i + ": Invalid");
-            }
+            status.add(getBlockStatus(i));
         }
         return status;
     }
     
     public void invalidate() {
         for (int i = 0; i < numBlocks; i++) {
-            blocks[i].valid = false;
+            changing(i);
+            valid[i] = false;
+            prefetched[i] = false;
+            states[i] = 'I';
+        }
+        dirtyBlocks.set(0, numBlocks);
+        changingFills();
+        pendingFills.clear();
+        pendingPrefetches.clear();
+        pendingStates.clear();
+        if (victimCache != null) {
+            victimCache.invalidate();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,173 @@
+import java.util.*;
+
+public class CoherenceBus {
+    public enum RequestType { READ, READX, UPGRADE }
+
+    private static class Request {
+        int core;
+        int blockAddress;
+        RequestType type;
+    }
+
+    private static class Write {
+        int core;
+        int address;
+        long value;
+        boolean doubleword;
+    }
+
+    private List<Cache> l1s = new ArrayList<>();
+    private Cache l2;
+    private Memory memory;
+    private boolean mesi;
+    private int l2HitLatency;
+    private int memoryLatency;
+    private int busLatency;
+
+    // Requests posted by the cores during a cycle; resolved in core order at the barrier
+    private List<List<Request>> requests = new ArrayList<>();
+    private List<List<Write>> writes = new ArrayList<>();
+
+    // Statistics
+    public int busReads = 0;
+    public int busReadX = 0;
+    public int upgrades = 0;
+    public int invalidations = 0;
+    public int interventions = 0;   // another L1 supplied the block
+    public int l2Hits = 0;
+    public int l2Misses = 0;
+    public int writeThroughs = 0;
+
+    public CoherenceBus(SimulatorConfig config, Memory memory) {
+        this.memory = memory;
+        this.l2 = new Cache(config.l2Size, config.blockSize, memory);
+        this.mesi = "MESI".equals(config.coherenceProtocol);
+        this.l2HitLatency = config.l2HitLatency;
+        this.memoryLatency = config.l2HitLatency + config.cacheMissPenalty;
+        this.busLatency = config.busLatency;
+    }
+
+    public int attach(Cache l1) {
+        l1s.add(l1);
+        requests.add(new ArrayList<Request>());
+        writes.add(new ArrayList<Write>());
+        return l1s.size() - 1;
+    }
+
+    // Called by a core during its cycle; each core only touches its own lists
+    public void request(int core, int blockAddress, RequestType type) {
+        Request r = new Request();
+        r.core = core;
+        r.blockAddress = blockAddress;
+        r.type = type;
+        requests.get(core).add(r);
+    }
+
+    // Write-through data is applied to memory at the end of the cycle
+    public void postWrite(int core, int address, long value, boolean doubleword) {
+        Write w = new Write();
+        w.core = core;
+        w.address = address;
+        w.value = value;
+        w.doubleword = doubleword;
+        writes.get(core).add(w);
+    }
+
+    // Runs between cycles while every core is parked at the barrier, so the
+    // outcome does not depend on how the worker threads were scheduled
+    public void resolve(int cycle) {
+        for (int core = 0; core < l1s.size(); core++) {
+            for (Request r : requests.get(core)) {
+                serve(r, cycle);
+            }
+            requests.get(core).clear();
+        }
+        for (int core = 0; core < l1s.size(); core++) {
+            for (Write w : writes.get(core)) {
+                if (w.doubleword) {
+                    memory.storeDoubleword(w.address, w.value);
+                } else {
+                    memory.storeWord(w.address, (int) w.value);
+                }
+                l2.access(w.address);
+                invalidateOthers(w.core, w.address / l2BlockSize());
+                writeThroughs++;
+            }
+            writes.get(core).clear();
+        }
+    }
+
+    private void serve(Request r, int cycle) {
+        Cache requester = l1s.get(r.core);
+        RequestType type = r.type;
+
+        // An upgrade whose copy was invalidated earlier this cycle needs the data again
+        if (type == RequestType.UPGRADE && !requester.isHit(r.blockAddress * l2BlockSize())) {
+            type = RequestType.READX;
+        }
+
+        int latency;
+        char granted;
+        if (type == RequestType.UPGRADE) {
+            upgrades++;
+            invalidateOthers(r.core, r.blockAddress);
+            latency = busLatency;
+            granted = 'M';
+        } else {
+            boolean suppliedByPeer = false;
+            boolean shared = false;
+            for (int i = 0; i < l1s.size(); i++) {
+                if (i == r.core) continue;
+                char state = l1s.get(i).snoopState(r.blockAddress);
+                if (state == 'I') continue;
+                shared = true;
+                if (state == 'M' || state == 'E') suppliedByPeer = true;
+            }
+
+            if (type == RequestType.READX) {
+                busReadX++;
+                invalidateOthers(r.core, r.blockAddress);
+                granted = 'M';
+            } else {
+                busReads++;
+                for (int i = 0; i < l1s.size(); i++) {
+                    if (i != r.core) l1s.get(i).snoopDowngrade(r.blockAddress);
+                }
+                granted = (shared || !mesi) ? 'S' : 'E';
+            }
+
+            if (suppliedByPeer) {
+                interventions++;
+                latency = busLatency;
+            } else if (l2.isHit(r.blockAddress * l2BlockSize())) {
+                l2Hits++;
+                latency = l2HitLatency;
+            } else {
+                l2Misses++;
+                l2.access(r.blockAddress * l2BlockSize());
+                latency = memoryLatency;
+            }
+        }
+        requester.completeFill(r.blockAddress, cycle + latency, granted);
+    }
+
+    private void invalidateOthers(int core, int blockAddress) {
+        for (int i = 0; i < l1s.size(); i++) {
+            if (i != core && l1s.get(i).snoopInvalidate(blockAddress)) {
+                invalidations++;
+            }
+        }
+    }
+
+    private int l2BlockSize() {
+        return l2.getBlockSize();
+    }
+
+    public List<String> getStats() {
+        List<String> stats = new ArrayList<>();
+        stats.add("Bus reads: " + busReads + ", read-exclusive: " + busReadX + ", upgrades: " + upgrades);
+        stats.add("Invalidations: " + invalidations + ", cache-to-cache transfers: " + interventions);
+        stats.add("L2 hits: " + l2Hits + ", L2 misses: " + l2Misses + ", write-throughs: " + writeThroughs);
+        return stats;
+    }
+}
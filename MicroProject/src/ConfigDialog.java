@@ -13,15 +13,37 @@ public class ConfigDialog {
     private boolean okClicked = false;
 
     // Station size fields
-    private TextField fpAddField, fpMulField, loadField, intField;
+    private TextField fpAddField, fpMulField, loadField, storeField, intField, physRegField;
 
     // Latency fields
     private TextField addSubLatField, mulLatField, divLatField;
-    private TextField loadLatField, storeLatField, intLatField;
+    private TextField loadLatField, storeLatField, intLatField, branchLatField;
 
     // Cache fields
     private TextField cacheSizeField, blockSizeField;
     private TextField cacheHitField, cacheMissField;
+    private TextField cachePortsField, cacheBanksField, bankPenaltyField;
+    private TextField victimEntriesField, victimLatField;
+
+    // Main memory fields
+    private ComboBox<String> memoryBackendBox;
+    private TextField memorySizeField, memoryFileField;
+    private ComboBox<String> memoryModelBox, memSchedBox;
+    private TextField memBanksField, memRowSizeField, memRowHitField, memRowMissField, memBandwidthField;
+
+    // Prefetch fields
+    private ComboBox<String> prefetcherBox;
+    private TextField mshrField, prefetchDegreeField, prefetchDistanceField, prefetchTableField;
+
+    // Memory dependence prediction fields
+    private TextField storeSetField;
+
+    // Step-back history fields
+    private TextField historyCyclesField;
+
+    // Multi-core fields
+    private TextField numCoresField, l2SizeField, l2HitField, busLatencyField;
+    private ComboBox<String> coherenceBox;
 
     public ConfigDialog(Stage owner, SimulatorConfig currentConfig) {
         this.config = new SimulatorConfig();
@@ -59,10 +81,18 @@ public class ConfigDialog {
         loadField = new TextField(String.valueOf(config.loadBuffers));
         grid.add(loadField, 1, row++);
 
-        grid.add(new Label("Integer/Store Stations:"), 0, row);
+        grid.add(new Label("Store Buffers:"), 0, row);
+        storeField = new TextField(String.valueOf(config.storeBuffers));
+        grid.add(storeField, 1, row++);
+
+        grid.add(new Label("Integer/Branch Stations:"), 0, row);
         intField = new TextField(String.valueOf(config.intStations));
         grid.add(intField, 1, row++);
 
+        grid.add(new Label("Physical Registers:"), 0, row);
+        physRegField = new TextField(String.valueOf(config.physRegs));
+        grid.add(physRegField, 1, row++);
+
         row++;
 
         // === Instruction Latencies ===
@@ -92,6 +122,10 @@ public class ConfigDialog {
         intLatField = new TextField(String.valueOf(config.intAluLatency));
         grid.add(intLatField, 1, row++);
 
+        grid.add(new Label("Branch:"), 0, row);
+        branchLatField = new TextField(String.valueOf(config.branchLatency));
+        grid.add(branchLatField, 1, row++);
+
         row++;
 
         // === Cache Configuration ===
@@ -113,6 +147,149 @@ public class ConfigDialog {
         cacheMissField = new TextField(String.valueOf(config.cacheMissPenalty));
         grid.add(cacheMissField, 1, row++);
 
+        grid.add(new Label("Cache Ports (0 = no limit):"), 0, row);
+        cachePortsField = new TextField(String.valueOf(config.cachePorts));
+        grid.add(cachePortsField, 1, row++);
+
+        grid.add(new Label("Cache Banks (1 = not banked):"), 0, row);
+        cacheBanksField = new TextField(String.valueOf(config.cacheBanks));
+        grid.add(cacheBanksField, 1, row++);
+
+        grid.add(new Label("Bank Conflict Penalty (cycles):"), 0, row);
+        bankPenaltyField = new TextField(String.valueOf(config.bankConflictPenalty));
+        grid.add(bankPenaltyField, 1, row++);
+
+        grid.add(new Label("Victim Cache Entries (0 = off):"), 0, row);
+        victimEntriesField = new TextField(String.valueOf(config.victimEntries));
+        grid.add(victimEntriesField, 1, row++);
+
+        grid.add(new Label("Victim Hit Latency (cycles):"), 0, row);
+        victimLatField = new TextField(String.valueOf(config.victimHitLatency));
+        grid.add(victimLatField, 1, row++);
+
+        row++;
+
+        // === Main Memory ===
+        grid.add(createSectionLabel("Main Memory"), 0, row++, 2, 1);
+
+        grid.add(new Label("Memory Backend:"), 0, row);
+        memoryBackendBox = new ComboBox<>();
+        memoryBackendBox.getItems().addAll("heap", "offheap", "mapped");
+        memoryBackendBox.setValue(config.memoryBackend);
+        grid.add(memoryBackendBox, 1, row++);
+
+        grid.add(new Label("Memory Size (bytes):"), 0, row);
+        memorySizeField = new TextField(String.valueOf(config.memorySize));
+        grid.add(memorySizeField, 1, row++);
+
+        grid.add(new Label("Memory File (mapped):"), 0, row);
+        memoryFileField = new TextField(config.memoryFile);
+        grid.add(memoryFileField, 1, row++);
+
+        grid.add(new Label("Memory Model:"), 0, row);
+        memoryModelBox = new ComboBox<>();
+        memoryModelBox.getItems().addAll("fixed", "dram");
+        memoryModelBox.setValue(config.memoryModel);
+        grid.add(memoryModelBox, 1, row++);
+
+        grid.add(new Label("Memory Banks:"), 0, row);
+        memBanksField = new TextField(String.valueOf(config.memBanks));
+        grid.add(memBanksField, 1, row++);
+
+        grid.add(new Label("Row Size (bytes):"), 0, row);
+        memRowSizeField = new TextField(String.valueOf(config.memRowSize));
+        grid.add(memRowSizeField, 1, row++);
+
+        grid.add(new Label("Row Hit Latency (cycles):"), 0, row);
+        memRowHitField = new TextField(String.valueOf(config.memRowHitLatency));
+        grid.add(memRowHitField, 1, row++);
+
+        grid.add(new Label("Row Miss Latency (cycles):"), 0, row);
+        memRowMissField = new TextField(String.valueOf(config.memRowMissLatency));
+        grid.add(memRowMissField, 1, row++);
+
+        grid.add(new Label("Bus Bandwidth (bytes/cycle):"), 0, row);
+        memBandwidthField = new TextField(String.valueOf(config.memBytesPerCycle));
+        grid.add(memBandwidthField, 1, row++);
+
+        grid.add(new Label("Scheduling Policy:"), 0, row);
+        memSchedBox = new ComboBox<>();
+        memSchedBox.getItems().addAll("FCFS", "FR-FCFS");
+        memSchedBox.setValue(config.memSchedPolicy);
+        grid.add(memSchedBox, 1, row++);
+
+        row++;
+
+        // === Miss Handling and Prefetching ===
+        grid.add(createSectionLabel("Miss Handling and Prefetching"), 0, row++, 2, 1);
+
+        grid.add(new Label("MSHRs:"), 0, row);
+        mshrField = new TextField(String.valueOf(config.mshrs));
+        grid.add(mshrField, 1, row++);
+
+        grid.add(new Label("Prefetcher:"), 0, row);
+        prefetcherBox = new ComboBox<>();
+        prefetcherBox.getItems().addAll("none", "nextline", "stride", "stream");
+        prefetcherBox.setValue(config.prefetcher);
+        grid.add(prefetcherBox, 1, row++);
+
+        grid.add(new Label("Prefetch Degree:"), 0, row);
+        prefetchDegreeField = new TextField(String.valueOf(config.prefetchDegree));
+        grid.add(prefetchDegreeField, 1, row++);
+
+        grid.add(new Label("Prefetch Distance (blocks):"), 0, row);
+        prefetchDistanceField = new TextField(String.valueOf(config.prefetchDistance));
+        grid.add(prefetchDistanceField, 1, row++);
+
+        grid.add(new Label("Stride Table / Streams:"), 0, row);
+        prefetchTableField = new TextField(String.valueOf(config.prefetchTableSize));
+        grid.add(prefetchTableField, 1, row++);
+
+        row++;
+
+        // === Memory Dependence Prediction ===
+        grid.add(createSectionLabel("Memory Dependence Prediction"), 0, row++, 2, 1);
+
+        grid.add(new Label("Store Set Table Size (0 = off):"), 0, row);
+        storeSetField = new TextField(String.valueOf(config.storeSetSize));
+        grid.add(storeSetField, 1, row++);
+
+        row++;
+
+        // === Step-Back History ===
+        grid.add(createSectionLabel("Step-Back History"), 0, row++, 2, 1);
+
+        grid.add(new Label("Cycles Kept (0 = off):"), 0, row);
+        historyCyclesField = new TextField(String.valueOf(config.historyCycles));
+        grid.add(historyCyclesField, 1, row++);
+
+        row++;
+
+        // === Multi-Core ===
+        grid.add(createSectionLabel("Multi-Core"), 0, row++, 2, 1);
+
+        grid.add(new Label("Cores:"), 0, row);
+        numCoresField = new TextField(String.valueOf(config.numCores));
+        grid.add(numCoresField, 1, row++);
+
+        grid.add(new Label("Coherence Protocol:"), 0, row);
+        coherenceBox = new ComboBox<>();
+        coherenceBox.getItems().addAll("MSI", "MESI");
+        coherenceBox.setValue(config.coherenceProtocol);
+        grid.add(coherenceBox, 1, row++);
+
+        grid.add(new Label("Shared L2 Size (bytes):"), 0, row);
+        l2SizeField = new TextField(String.valueOf(config.l2Size));
+        grid.add(l2SizeField, 1, row++);
+
+        grid.add(new Label("L2 Hit Latency (cycles):"), 0, row);
+        l2HitField = new TextField(String.valueOf(config.l2HitLatency));
+        grid.add(l2HitField, 1, row++);
+
+        grid.add(new Label("Bus Latency (cycles):"), 0, row);
+        busLatencyField = new TextField(String.valueOf(config.busLatency));
+        grid.add(busLatencyField, 1, row++);
+
         // Buttons
         Button okButton = new Button("OK");
         Button cancelButton = new Button("Cancel");
@@ -140,8 +317,11 @@ public class ConfigDialog {
             }
         });
 
-        // Create scene and show
-        Scene scene = new Scene(grid);
+        // Create scene and show; the form is taller than most screens, so it scrolls
+        ScrollPane scroll = new ScrollPane(grid);
+        scroll.setFitToWidth(true);
+        scroll.setPrefViewportHeight(700);
+        Scene scene = new Scene(scroll);
         dialogStage.setScene(scene);
     }
 
@@ -162,10 +342,12 @@ public class ConfigDialog {
 
     private boolean validateInput() {
         try {
-            config.fpAddStations = Integer.parseInt(fpAddField.getText().trim());
-            config.fpMulStations = Integer.parseInt(fpMulField.getText().trim());
-            config.loadBuffers = Integer.parseInt(loadField.getText().trim());
-            config.intStations = Integer.parseInt(intField.getText().trim());
+            config.fpAddStations = atLeast(fpAddField, 1, "FP ADD/SUB Stations");
+            config.fpMulStations = atLeast(fpMulField, 1, "FP MUL/DIV Stations");
+            config.loadBuffers = atLeast(loadField, 1, "Load Buffers");
+            config.storeBuffers = atLeast(storeField, 1, "Store Buffers");
+            config.intStations = atLeast(intField, 1, "Integer/Branch Stations");
+            config.physRegs = atLeast(physRegField, 1, "Physical Registers");
 
             config.addSubLatency = Integer.parseInt(addSubLatField.getText().trim());
             config.mulLatency = Integer.parseInt(mulLatField.getText().trim());
@@ -173,40 +355,92 @@ public class ConfigDialog {
             config.loadLatency = Integer.parseInt(loadLatField.getText().trim());
             config.storeLatency = Integer.parseInt(storeLatField.getText().trim());
             config.intAluLatency = Integer.parseInt(intLatField.getText().trim());
+            config.branchLatency = Integer.parseInt(branchLatField.getText().trim());
 
             config.cacheSize = Integer.parseInt(cacheSizeField.getText().trim());
             config.blockSize = Integer.parseInt(blockSizeField.getText().trim());
             config.cacheHitLatency = Integer.parseInt(cacheHitField.getText().trim());
             config.cacheMissPenalty = Integer.parseInt(cacheMissField.getText().trim());
+            config.cachePorts = atLeast(cachePortsField, 0, "Cache Ports");
+            config.cacheBanks = atLeast(cacheBanksField, 1, "Cache Banks");
+            config.bankConflictPenalty = atLeast(bankPenaltyField, 0, "Bank Conflict Penalty");
+            config.victimEntries = Integer.parseInt(victimEntriesField.getText().trim());
+            config.victimHitLatency = Integer.parseInt(victimLatField.getText().trim());
+
+            config.memoryBackend = memoryBackendBox.getValue();
+            config.memorySize = Integer.parseInt(memorySizeField.getText().trim());
+            config.memoryFile = memoryFileField.getText().trim();
+            config.memoryModel = memoryModelBox.getValue();
+            config.memBanks = Integer.parseInt(memBanksField.getText().trim());
+            config.memRowSize = Integer.parseInt(memRowSizeField.getText().trim());
+            config.memRowHitLatency = Integer.parseInt(memRowHitField.getText().trim());
+            config.memRowMissLatency = Integer.parseInt(memRowMissField.getText().trim());
+            config.memBytesPerCycle = Integer.parseInt(memBandwidthField.getText().trim());
+            config.memSchedPolicy = memSchedBox.getValue();
+
+            config.mshrs = atLeast(mshrField, 1, "MSHRs");
+            config.prefetcher = prefetcherBox.getValue();
+            config.prefetchDegree = Integer.parseInt(prefetchDegreeField.getText().trim());
+            config.prefetchDistance = Integer.parseInt(prefetchDistanceField.getText().trim());
+            config.prefetchTableSize = Integer.parseInt(prefetchTableField.getText().trim());
+
+            config.storeSetSize = Integer.parseInt(storeSetField.getText().trim());
+
+            config.historyCycles = Integer.parseInt(historyCyclesField.getText().trim());
+
+            config.numCores = atLeast(numCoresField, 1, "Cores");
+            config.coherenceProtocol = coherenceBox.getValue();
+            config.l2Size = atLeast(l2SizeField, config.blockSize, "Shared L2 Size");
+            config.l2HitLatency = atLeast(l2HitField, 0, "L2 Hit Latency");
+            config.busLatency = atLeast(busLatencyField, 0, "Bus Latency");
 
             return true;
         } catch (NumberFormatException e) {
-            // Show error using basic components
-            Stage errorStage = new Stage();
-            errorStage.setTitle("Invalid Input");
-            errorStage.initModality(Modality.WINDOW_MODAL);
-            errorStage.initOwner(dialogStage);
-            
-            VBox errorBox = new VBox(10);
-            errorBox.setPadding(new Insets(20));
-            errorBox.getChildren().addAll(
-                new Label("Please enter valid integer numbers in all fields."),
-                new Button("OK") {{
-                    setOnAction(ev -> errorStage.close());
-                }}
-            );
-            
-            errorStage.setScene(new Scene(errorBox));
-            errorStage.showAndWait();
+            showError("Please enter valid integer numbers in all fields.");
+            return false;
+        } catch (IllegalArgumentException e) {
+            showError(e.getMessage());
             return false;
         }
     }
 
+    // Parses a field that has to be at least min; below it the simulator would stall
+    // forever or fail to build
+    private static int atLeast(TextField field, int min, String name) {
+        int value = Integer.parseInt(field.getText().trim());
+        if (value < min) {
+            throw new IllegalArgumentException(name + " must be at least " + min + ".");
+        }
+        return value;
+    }
+
+    private void showError(String message) {
+        // Show error using basic components
+        Stage errorStage = new Stage();
+        errorStage.setTitle("Invalid Input");
+        errorStage.initModality(Modality.WINDOW_MODAL);
+        errorStage.initOwner(dialogStage);
+        
+        VBox errorBox = new VBox(10);
+        errorBox.setPadding(new Insets(20));
+        errorBox.getChildren().addAll(
+            new Label(message),
+            new Button("OK") {{
+                setOnAction(ev -> errorStage.close());
+            }}
+        );
+        
+        errorStage.setScene(new Scene(errorBox));
+        errorStage.showAndWait();
+    }
+
     private void copyConfig(SimulatorConfig from, SimulatorConfig to) {
         to.fpAddStations = from.fpAddStations;
         to.fpMulStations = from.fpMulStations;
         to.loadBuffers = from.loadBuffers;
+        to.storeBuffers = from.storeBuffers;
         to.intStations = from.intStations;
+        to.physRegs = from.physRegs;
 
         to.addSubLatency = from.addSubLatency;
         to.mulLatency = from.mulLatency;
@@ -214,10 +448,43 @@ public class ConfigDialog {
         to.loadLatency = from.loadLatency;
         to.storeLatency = from.storeLatency;
         to.intAluLatency = from.intAluLatency;
+        to.branchLatency = from.branchLatency;
 
         to.cacheSize = from.cacheSize;
         to.blockSize = from.blockSize;
         to.cacheHitLatency = from.cacheHitLatency;
         to.cacheMissPenalty = from.cacheMissPenalty;
+        to.cachePorts = from.cachePorts;
+        to.cacheBanks = from.cacheBanks;
+        to.bankConflictPenalty = from.bankConflictPenalty;
+        to.victimEntries = from.victimEntries;
+        to.victimHitLatency = from.victimHitLatency;
+
+        to.memoryBackend = from.memoryBackend;
+        to.memorySize = from.memorySize;
+        to.memoryFile = from.memoryFile;
+        to.memoryModel = from.memoryModel;
+        to.memBanks = from.memBanks;
+        to.memRowSize = from.memRowSize;
+        to.memRowHitLatency = from.memRowHitLatency;
+        to.memRowMissLatency = from.memRowMissLatency;
+        to.memBytesPerCycle = from.memBytesPerCycle;
+        to.memSchedPolicy = from.memSchedPolicy;
+
+        to.mshrs = from.mshrs;
+        to.prefetcher = from.prefetcher;
+        to.prefetchDegree = from.prefetchDegree;
+        to.prefetchDistance = from.prefetchDistance;
+        to.prefetchTableSize = from.prefetchTableSize;
+
+        to.storeSetSize = from.storeSetSize;
+
+        to.historyCycles = from.historyCycles;
+
+        to.numCores = from.numCores;
+        to.coherenceProtocol = from.coherenceProtocol;
+        to.l2Size = from.l2Size;
+        to.l2HitLatency = from.l2HitLatency;
+        to.busLatency = from.busLatency;
     }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+import java.util.*;
+
+// Everything that happened in one simulated cycle, handed to every CycleObserver once
+// the cycle is over. Immutable, so asynchronous observers can keep it after the
+// simulator has moved on. Stations are identified by id (see getAllStations)
+public final class CycleDelta {
+    public enum StallReason {
+        NO_FREE_STATION("No free reservation station"),
+        NO_FREE_PHYS_REG("No free physical register"),
+        ADDRESS_CLASH("Earlier memory operation to same address not yet completed"),
+        PREDICTED_DEPENDENCE("Waiting on predicted store dependence"),
+        UNKNOWN_ADDRESS("Waiting for an earlier store address"),
+        MSHRS_FULL("Miss waiting for a free MSHR"),
+        CACHE_PORTS_BUSY("All cache ports busy"),
+        BANK_CONFLICT("Cache bank conflict"),
+        LOAD_REPLAY("Load ran ahead of a store to the same address and was replayed");
+
+        public final String label;
+
+        StallReason(String label) {
+            this.label = label;
+        }
+    }
+
+    // station is -1 for issue stalls; address is -1 when not a memory access
+    public static final class Stall {
+        public final int station;
+        public final StallReason reason;
+        public final int address;
+
+        Stall(int station, StallReason reason, int address) {
+            this.station = station;
+            this.reason = reason;
+            this.address = address;
+        }
+    }
+
+    public static final class RegisterWrite {
+        public final String register;
+        public final double value;
+
+        RegisterWrite(String register, double value) {
+            this.register = register;
+            this.value = value;
+        }
+    }
+
+    public final int cycle;
+    public final List<Integer> issued;       // stations that received an instruction
+    public final List<Integer> started;      // stations that began executing
+    // Arithmetic instructions leave their station when they start executing; they are
+    // still reported under that station when they complete and write back
+    public final List<Integer> completed;    // stations whose execution latency ran out
+    public final List<Integer> broadcast;    // stations that wrote back on the CDB
+    public final List<RegisterWrite> registerWrites;
+    public final List<Integer> cacheMisses;  // byte addresses of demand misses
+    public final List<Integer> cacheFills;   // block addresses installed in the cache
+    public final List<Integer> evictions;    // block addresses replaced by a fill
+    public final List<Stall> stalls;
+
+    private CycleDelta(Builder b) {
+        cycle = b.cycle;
+        issued = freeze(b.issued);
+        started = freeze(b.started);
+        completed = freeze(b.completed);
+        broadcast = freeze(b.broadcast);
+        registerWrites = freeze(b.registerWrites);
+        cacheMisses = freeze(b.cacheMisses);
+        cacheFills = freeze(b.cacheFills);
+        evictions = freeze(b.evictions);
+        stalls = freeze(b.stalls);
+    }
+
+    private static <T> List<T> freeze(List<T> list) {
+        return list.isEmpty() ? Collections.<T>emptyList() : Collections.unmodifiableList(list);
+    }
+
+    // Filled in by the simulator during a step; build() hands its lists over to the delta
+    static class Builder {
+        private final int cycle;
+        private List<Integer> issued = new ArrayList<>();
+        private List<Integer> started = new ArrayList<>();
+        private List<Integer> completed = new ArrayList<>();
+        private List<Integer> broadcast = new ArrayList<>();
+        private List<RegisterWrite> registerWrites = new ArrayList<>();
+        private List<Integer> cacheMisses = new ArrayList<>();
+        private List<Integer> cacheFills = new ArrayList<>();
+        private List<Integer> evictions = new ArrayList<>();
+        private List<Stall> stalls = new ArrayList<>();
+
+        Builder(int cycle) {
+            this.cycle = cycle;
+        }
+
+        void issued(int rs) {
+            issued.add(rs);
+        }
+
+        void started(int rs) {
+            started.add(rs);
+        }
+
+        void completed(int rs) {
+            completed.add(rs);
+        }
+
+        void broadcast(int rs) {
+            broadcast.add(rs);
+        }
+
+        void registerWrite(String register, double value) {
+            registerWrites.add(new RegisterWrite(register, value));
+        }
+
+        void cacheMiss(int address) {
+            cacheMisses.add(address);
+        }
+
+        void stall(int rs, StallReason reason, int address) {
+            stalls.add(new Stall(rs, reason, address));
+        }
+
+        CycleDelta build(List<Integer> fills, List<Integer> evicted) {
+            cacheFills = fills;
+            evictions = evicted;
+            return new CycleDelta(this);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.*;
+
+// Bounded ring buffer of simulator events. Producers (the simulation thread) only
+// append; the GUI drains whatever arrived since its last refresh in one batch
+public class EventLog {
+    public enum Kind {
+        CACHE_MISS("Cache miss"),
+        ADDRESS_CLASH("Address clash");
+
+        public final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    public static class Event {
+        public final int cycle;
+        public final Kind kind;
+        public final String text;
+
+        public Event(int cycle, Kind kind, String text) {
+            this.cycle = cycle;
+            this.kind = kind;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + cycle + "] " + kind.label + ": " + text;
+        }
+    }
+
+    private Event[] ring;
+    private long written = 0;   // events ever added
+    private long drained = 0;   // events handed to the consumer or overwritten before it got them
+    private long dropped = 0;
+
+    public EventLog(int capacity) {
+        ring = new Event[Math.max(1, capacity)];
+    }
+
+    public synchronized void add(int cycle, Kind kind, String text) {
+        ring[(int) (written % ring.length)] = new Event(cycle, kind, text);
+        written++;
+    }
+
+    // Events added since the last call, oldest first. If the consumer fell more than
+    // a full buffer behind, the oldest of them were overwritten and are counted as dropped
+    public synchronized List<Event> drainNew() {
+        if (written - drained > ring.length) {
+            dropped += written - drained - ring.length;
+            drained = written - ring.length;
+        }
+        List<Event> batch = new ArrayList<>((int) (written - drained));
+        for (long i = drained; i < written; i++) {
+            batch.add(ring[(int) (i % ring.length)]);
+        }
+        drained = written;
+        return batch;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(ring, null);
+        written = 0;
+        drained = 0;
+        dropped = 0;
+    }
+}
@@ -1,43 +1,59 @@
 public class Instruction {
 
+	// Groups opcodes by the functional unit and latency they use
+	public enum OpClass { INT_ALU, ADD_SUB, MUL, DIV, LOAD, STORE, BRANCH }
+
 	public enum OpCode {
 
 	    // Integer ops
-	    DADDI("DADDI"),
-	    DSUBI("DSUBI"),
+	    DADDI("DADDI", OpClass.INT_ALU),
+	    DSUBI("DSUBI", OpClass.INT_ALU),
 
 	    // Floating-point add/sub
-	    ADD_D("ADD.D"),
-	    ADD_S("ADD.S"),
-	    SUB_D("SUB.D"),
-	    SUB_S("SUB.S"),
+	    ADD_D("ADD.D", OpClass.ADD_SUB),
+	    ADD_S("ADD.S", OpClass.ADD_SUB),
+	    SUB_D("SUB.D", OpClass.ADD_SUB),
+	    SUB_S("SUB.S", OpClass.ADD_SUB),
 
 	    // Floating-point multiply/divide
-	    MUL_D("MUL.D"),
-	    MUL_S("MUL.S"),
-	    DIV_D("DIV.D"),
-	    DIV_S("DIV.S"),
+	    MUL_D("MUL.D", OpClass.MUL),
+	    MUL_S("MUL.S", OpClass.MUL),
+	    DIV_D("DIV.D", OpClass.DIV),
+	    DIV_S("DIV.S", OpClass.DIV),
 
 	    // Loads
-	    LW("LW"),
-	    LD("LD"),
-	    L_S("L.S"),
-	    L_D("L.D"),
+	    LW("LW", OpClass.LOAD),
+	    LD("LD", OpClass.LOAD),
+	    L_S("L.S", OpClass.LOAD),
+	    L_D("L.D", OpClass.LOAD),
 
 	    // Stores
-	    SW("SW"),
-	    SD("SD"),
-	    S_S("S.S"),
-	    S_D("S.D"),
+	    SW("SW", OpClass.STORE),
+	    SD("SD", OpClass.STORE),
+	    S_S("S.S", OpClass.STORE),
+	    S_D("S.D", OpClass.STORE),
 
 	    // Branches
-	    BEQ("BEQ"),
-	    BNE("BNE");
+	    BEQ("BEQ", OpClass.BRANCH),
+	    BNE("BNE", OpClass.BRANCH);
 
 	    public final String text;
+	    public final OpClass opClass;
+
+	    // Fixed per opcode so the simulator never inspects the mnemonic text
+	    public final boolean isLoad;
+	    public final boolean isStore;
+	    public final boolean isFloat;   // .D/.S forms move FP values
+	    public final int width;         // bytes accessed by a load/store, 0 otherwise
 
-	    OpCode(String t) {
+	    OpCode(String t, OpClass c) {
 	        text = t;
+	        opClass = c;
+	        isLoad = c == OpClass.LOAD;
+	        isStore = c == OpClass.STORE;
+	        isFloat = t.indexOf('.') >= 0;
+	        // LD/SD and L.D/S.D move doublewords, LW/SW and L.S/S.S words
+	        width = (isLoad || isStore) ? (t.charAt(t.length() - 1) == 'D' ? 8 : 4) : 0;
 	    }
 
 	    @Override
@@ -1,133 +1,457 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+// Two-pass assembler for the simulator's instruction set. The first pass streams the
+// source one line at a time, decoding instructions and data directives and noting
+// every label it defines or uses; the second pass patches the label operands. Errors
+// are collected with their line numbers instead of stopping at the first one.
+//
+// Syntax, one statement per line:
+//   loop:  L.D F0, 0(R1)      ; comment (# also starts one)
+//          BNE R1, R2, loop   ; branch targets may be labels or instruction offsets
+//   .data 256                 ; data section, optionally starting at an address
+//   arr:   .double 1.5, 2.5   ; also .word, .dword, .float and .space <bytes>
+//   .text                     ; back to instructions; .org <address> moves the data pointer
+// Data labels can be used as load/store offsets and DADDI/DSUBI immediates. Data
+// values must be aligned to their size and fit the memory size passed to parse.
 public class InstructionParser {
 
+    public static class ParseError {
+        public final int line;
+        public final String message;
+
+        ParseError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message;
+        }
+    }
+
+    // One initialised data value: 4 or 8 bytes at address, as raw bits
+    public static class DataWord {
+        public final int address;
+        public final int width;
+        public final long bits;
+
+        DataWord(int address, int width, long bits) {
+            this.address = address;
+            this.width = width;
+            this.bits = bits;
+        }
+    }
+
+    public static class Result {
+        public final List<Instruction> instructions = new ArrayList<>();
+        public final List<DataWord> data = new ArrayList<>();
+        public final List<ParseError> errors = new ArrayList<>();
+
+        public boolean hasErrors() {
+            return !errors.isEmpty();
+        }
+
+        // Stores the data segment into memory before the program runs
+        public void writeData(Memory memory) {
+            for (DataWord d : data) {
+                if (d.width == 8) {
+                    memory.storeDoubleword(d.address, d.bits);
+                } else {
+                    memory.storeWord(d.address, (int) d.bits);
+                }
+            }
+        }
+
+        // Packs the program into a ProgramImage, which can be saved as a binary file
+        public ProgramImage toImage() {
+            return ProgramImage.from(this);
+        }
+
+        // The first few errors, one per line, for dialogs and exception messages
+        public String errorSummary(int max) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < errors.size() && i < max; i++) {
+                sb.append(errors.get(i)).append("\n");
+            }
+            if (errors.size() > max) {
+                sb.append("... and ").append(errors.size() - max).append(" more\n");
+            }
+            return sb.toString();
+        }
+    }
+
+    // Mnemonic -> opcode, built once instead of matching each line against patterns
+    private static final Map<String, Instruction.OpCode> OPCODES = new HashMap<>();
+    static {
+        for (Instruction.OpCode op : Instruction.OpCode.values()) {
+            OPCODES.put(op.text, op);
+        }
+    }
+
+    // An operand naming a label, patched in the second pass
+    private static class Fixup {
+        int index;         // instruction it belongs to
+        String label;
+        int line;
+        boolean branch;    // branch target (code label) or immediate (data label)
+    }
+
+    private Result result = new Result();
+    private List<Fixup> fixups = new ArrayList<>();
+    private Map<String, Integer> codeLabels = new HashMap<>();   // label -> instruction index
+    private Map<String, Integer> dataLabels = new HashMap<>();   // label -> byte address
+    private boolean inData = false;
+    private int dataAddress = 0;
+    private int lineNo = 0;
+    private final int memorySize;
+
+    private InstructionParser(int memorySize) {
+        this.memorySize = memorySize;
+    }
+
+    // Without a memory size only alignment is checked; ProgramImage.load and
+    // TomasuloSimulator.loadProgram check the range against the real memory
+    public static Result parse(Reader source) throws IOException {
+        return parse(source, Integer.MAX_VALUE);
+    }
+
+    public static Result parse(Reader source, int memorySize) throws IOException {
+        InstructionParser p = new InstructionParser(memorySize);
+        BufferedReader in = source instanceof BufferedReader
+                ? (BufferedReader) source : new BufferedReader(source, 1 << 16);
+        String line;
+        while ((line = in.readLine()) != null) {
+            p.lineNo++;
+            p.parseLine(line);
+        }
+        p.resolveLabels();
+        return p.result;
+    }
+
+    public static Result parseFile(File file) throws IOException {
+        return parseFile(file, Integer.MAX_VALUE);
+    }
+
+    public static Result parseFile(File file, int memorySize) throws IOException {
+        try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return parse(in, memorySize);
+        }
+    }
+
+    // Short programs held in a String, e.g. the GUI text area. Throws listing the errors
     public static List<Instruction> parse(String text) {
-        List<Instruction> list = new ArrayList<>();
-        String[] lines = text.split("\n");
+        Result r;
+        try {
+            r = parse(new StringReader(text));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (r.hasErrors()) {
+            throw new IllegalArgumentException(r.errors.size() + " error(s) in program:\n" + r.errorSummary(20));
+        }
+        return r.instructions;
+    }
+
+    private void error(String message) {
+        result.errors.add(new ParseError(lineNo, message));
+    }
+
+    private void parseLine(String line) {
+        int comment = indexOfComment(line);
+        if (comment >= 0) line = line.substring(0, comment);
+        line = line.trim();
+
+        // Any number of leading "name:" labels
+        int colon;
+        while ((colon = line.indexOf(':')) >= 0) {
+            defineLabel(line.substring(0, colon).trim());
+            line = line.substring(colon + 1).trim();
+        }
+        if (line.isEmpty()) return;
+
+        List<String> tokens = tokenize(line);
+        String head = tokens.get(0);
+        if (head.startsWith(".")) {
+            directive(head.toLowerCase(), tokens);
+        } else {
+            instruction(head.toUpperCase(), tokens);
+        }
+    }
+
+    private static int indexOfComment(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ';' || c == '#') return i;
+        }
+        return -1;
+    }
+
+    // Operands are separated by commas and/or whitespace
+    private static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>(4);
+        int start = -1;
+        for (int i = 0; i <= line.length(); i++) {
+            boolean separator = i == line.length() || line.charAt(i) == ',' || Character.isWhitespace(line.charAt(i));
+            if (separator) {
+                if (start >= 0) tokens.add(line.substring(start, i));
+                start = -1;
+            } else if (start < 0) {
+                start = i;
+            }
+        }
+        return tokens;
+    }
+
+    private void defineLabel(String name) {
+        if (!isIdentifier(name)) {
+            error("Invalid label name '" + name + "'");
+        } else if (codeLabels.containsKey(name) || dataLabels.containsKey(name)) {
+            error("Label '" + name + "' is already defined");
+        } else if (inData) {
+            dataLabels.put(name, dataAddress);
+        } else {
+            codeLabels.put(name, result.instructions.size());
+        }
+    }
+
+    private static boolean isIdentifier(String s) {
+        if (s.isEmpty() || !(Character.isLetter(s.charAt(0)) || s.charAt(0) == '_')) return false;
+        for (int i = 1; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '.') return false;
+        }
+        return true;
+    }
+
+    // -------------------------
+    // Directives
+    // -------------------------
+    private void directive(String name, List<String> tokens) {
+        switch (name) {
+            case ".text":
+                inData = false;
+                return;
+            case ".data":
+                inData = true;
+                if (tokens.size() > 1) setDataAddress(tokens.get(1));
+                return;
+            case ".org":
+                if (tokens.size() != 2) {
+                    error(".org needs one address");
+                } else {
+                    setDataAddress(tokens.get(1));
+                }
+                return;
+            case ".space":
+                Long bytes = tokens.size() == 2 ? parseNumber(tokens.get(1)) : null;
+                if (bytes == null || bytes < 0) {
+                    error(".space needs a byte count");
+                } else if (dataAddress + bytes > memorySize) {
+                    error(".space " + bytes + " runs past the end of memory (" + memorySize + " bytes)");
+                } else {
+                    dataAddress += bytes;
+                }
+                return;
+            case ".word": case ".dword": case ".float": case ".double":
+                break;
+            default:
+                error("Unknown directive " + name);
+                return;
+        }
+
+        if (tokens.size() < 2) {
+            error(name + " needs at least one value");
+            return;
+        }
+        int width = name.equals(".word") || name.equals(".float") ? 4 : 8;
+        for (int i = 1; i < tokens.size(); i++) {
+            String value = tokens.get(i);
+            Long bits = null;
+            try {
+                switch (name) {
+                    case ".float":
+                        bits = (long) Float.floatToRawIntBits(Float.parseFloat(value));
+                        break;
+                    case ".double":
+                        bits = Double.doubleToRawLongBits(Double.parseDouble(value));
+                        break;
+                    default:
+                        bits = parseNumber(value);
+                }
+            } catch (NumberFormatException e) {
+                bits = null;
+            }
+            String problem = ProgramImage.checkDataWord(dataAddress, width, memorySize);
+            if (bits == null) {
+                error("Invalid " + name + " value '" + value + "'");
+            } else if (name.equals(".word") && (bits < Integer.MIN_VALUE || bits > 0xFFFFFFFFL)) {
+                // Signed or unsigned 32-bit values only; anything wider would be cut short
+                error(".word value " + value + " does not fit in 32 bits");
+            } else if (problem != null) {
+                error(problem);
+            } else {
+                result.data.add(new DataWord(dataAddress, width, bits));
+            }
+            dataAddress += width;
+        }
+    }
+
+    private void setDataAddress(String token) {
+        Long address = parseNumber(token);
+        if (address == null || address < 0) {
+            error("Invalid data address '" + token + "'");
+        } else if (address >= memorySize) {
+            // At least one byte has to be left, or the next value would land past the end
+            error("Data address " + token + " is outside memory (" + memorySize + " bytes)");
+        } else {
+            dataAddress = (int) (long) address;
+        }
+    }
 
-        for (String line : lines) {
-            line = line.trim();
-            if (line.isEmpty()) continue;
-            list.add(parseLine(line));
-        }
-        return list;
-    }
-
-    private static Instruction parseLine(String line) {
-        // Normalize spacing and remove commas
-        line = line.replace(",", "");
-        String[] parts = line.split("\\s+");
-
-        String op = parts[0].toUpperCase();
-
-        // ===========================
-        //  Floating arithmetic: ADD.D / ADD.S etc.
-        // ===========================
-        if (op.matches("ADD\\.D|ADD\\.S|SUB\\.D|SUB\\.S|MUL\\.D|MUL\\.S|DIV\\.D|DIV\\.S")) {
-            return new Instruction(
-                    opcodeFromString(op),
-                    parts[1], parts[2], parts[3],
-                    0
-            );
-        }
-
-        // ===========================
-        //  Integer immediate instructions
-        // ===========================
-        if (op.equals("DADDI") || op.equals("DSUBI")) {
-            return new Instruction(
-                    opcodeFromString(op),
-                    parts[1], parts[2], null,
-                    Integer.parseInt(parts[3])
-            );
-        }
-
-        // ===========================
-        // Load: LW / LD / L.S / L.D
-        // Format: LW R1, 8(R2)
-        // ===========================
-        if (op.equals("LW") || op.equals("LD") || op.equals("L.S") || op.equals("L.D")) {
-
-            String rt = parts[1];
-            String offset = parts[2];
-
-            int imm = Integer.parseInt(offset.substring(0, offset.indexOf("(")));
-            String base = offset.substring(offset.indexOf("(") + 1, offset.indexOf(")"));
-
-            return new Instruction(
-                    opcodeFromString(op),
-                    rt, base, null,
-                    imm
-            );
-        }
-
-        // ===========================
-        // Store: SW / SD / S.S / S.D
-        // Format: S.D F4, 8(R1)
-        // ===========================
-        if (op.equals("SW") || op.equals("SD") || op.equals("S.S") || op.equals("S.D")) {
-
-            String src = parts[1];   // the register whose value we store
-            String offset = parts[2];
-
-            int imm = Integer.parseInt(offset.substring(0, offset.indexOf("(")));
-            String base = offset.substring(offset.indexOf("(") + 1, offset.indexOf(")"));
-
-            return new Instruction(
-                    opcodeFromString(op),
-                    src, base, null,
-                    imm
-            );
-        }
-
-        // ===========================
-        // Branches: BEQ R1 R2 offset
-        // ===========================
-        if (op.equals("BEQ") || op.equals("BNE")) {
-            return new Instruction(
-                    opcodeFromString(op),
-                    null,              // no dest
-                    parts[1], parts[2],
-                    Integer.parseInt(parts[3])
-            );
-        }
-
-        // ===========================
-        // If we reach here -> invalid instruction
-        // ===========================
-        throw new RuntimeException("Unsupported or invalid instruction: " + line);
-    }
-
-
-    // Helper: map string op to enum opcode
-    private static Instruction.OpCode opcodeFromString(String op) {
-        switch (op) {
-            case "DADDI": return Instruction.OpCode.DADDI;
-            case "DSUBI": return Instruction.OpCode.DSUBI;
-
-            case "ADD.D": return Instruction.OpCode.ADD_D;
-            case "ADD.S": return Instruction.OpCode.ADD_S;
-            case "SUB.D": return Instruction.OpCode.SUB_D;
-            case "SUB.S": return Instruction.OpCode.SUB_S;
-            case "MUL.D": return Instruction.OpCode.MUL_D;
-            case "MUL.S": return Instruction.OpCode.MUL_S;
-            case "DIV.D": return Instruction.OpCode.DIV_D;
-            case "DIV.S": return Instruction.OpCode.DIV_S;
-
-            case "LW":   return Instruction.OpCode.LW;
-            case "LD":   return Instruction.OpCode.LD;
-            case "L.S":  return Instruction.OpCode.L_S;
-            case "L.D":  return Instruction.OpCode.L_D;
-
-            case "SW":   return Instruction.OpCode.SW;
-            case "SD":   return Instruction.OpCode.SD;
-            case "S.S":  return Instruction.OpCode.S_S;
-            case "S.D":  return Instruction.OpCode.S_D;
-
-            case "BNE":  return Instruction.OpCode.BNE;
-            case "BEQ":  return Instruction.OpCode.BEQ;
-        }
-        throw new RuntimeException("Unknown opcode: " + op);
+    // -------------------------
+    // Instructions
+    // -------------------------
+    private void instruction(String mnemonic, List<String> tokens) {
+        Instruction.OpCode op = OPCODES.get(mnemonic);
+        if (op == null) {
+            error("Unknown instruction '" + tokens.get(0) + "'");
+            return;
+        }
+        if (inData) {
+            error("Instruction " + mnemonic + " in the .data section");
+            return;
+        }
+        if (tokens.size() != 4 && !(op.isLoad || op.isStore)) {
+            error(mnemonic + " takes 3 operands, found " + (tokens.size() - 1));
+            return;
+        }
+        if ((op.isLoad || op.isStore) && tokens.size() != 3) {
+            error(mnemonic + " takes a register and an offset(base) operand, found " + (tokens.size() - 1) + " operand(s)");
+            return;
+        }
+
+        int index = result.instructions.size();
+        Instruction inst;
+        switch (op.opClass) {
+            case ADD_SUB: case MUL: case DIV:
+                inst = new Instruction(op, register(tokens.get(1)), register(tokens.get(2)),
+                                       register(tokens.get(3)), 0);
+                break;
+
+            case INT_ALU:
+                inst = new Instruction(op, register(tokens.get(1)), register(tokens.get(2)), null,
+                                       immediate(tokens.get(3), index, false));
+                break;
+
+            case LOAD: case STORE: {
+                // offset(base); the offset may be empty, a number or a data label
+                String operand = tokens.get(2);
+                int open = operand.indexOf('(');
+                int close = operand.indexOf(')');
+                if (open < 0 || close != operand.length() - 1) {
+                    error("Expected offset(base) but found '" + operand + "'");
+                    return;
+                }
+                String offset = operand.substring(0, open);
+                int imm = offset.isEmpty() ? 0 : immediate(offset, index, false);
+                inst = new Instruction(op, register(tokens.get(1)),
+                                       register(operand.substring(open + 1, close)), null, imm);
+                break;
+            }
+
+            case BRANCH:
+                inst = new Instruction(op, null, register(tokens.get(1)), register(tokens.get(2)),
+                                       immediate(tokens.get(3), index, true));
+                break;
+
+            default:
+                error("Unsupported instruction " + mnemonic);
+                return;
+        }
+        result.instructions.add(inst);
+    }
+
+    // Validates a register name (R0-R31 or F0-F31) and normalises its case
+    private String register(String token) {
+        String name = token.toUpperCase();
+        boolean valid = name.length() >= 2 && name.length() <= 3 && (name.charAt(0) == 'R' || name.charAt(0) == 'F');
+        if (valid) {
+            for (int i = 1; i < name.length(); i++) {
+                if (!Character.isDigit(name.charAt(i))) valid = false;
+            }
+        }
+        if (!valid || Integer.parseInt(name.substring(1)) > 31) {
+            error("Invalid register '" + token + "'");
+        }
+        return name;
+    }
+
+    // A number, or a label to be patched once every label is known
+    private int immediate(String token, int index, boolean branch) {
+        Long value = parseNumber(token);
+        if (value != null) {
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                error("Immediate " + token + " out of range");
+            }
+            return (int) (long) value;
+        }
+        if (!isIdentifier(token)) {
+            error("Invalid immediate '" + token + "'");
+            return 0;
+        }
+        Fixup f = new Fixup();
+        f.index = index;
+        f.label = token;
+        f.line = lineNo;
+        f.branch = branch;
+        fixups.add(f);
+        return 0;
+    }
+
+    // Decimal or 0x hexadecimal, optionally negative; null if the token is not a number
+    private static Long parseNumber(String token) {
+        try {
+            boolean negative = token.startsWith("-");
+            String digits = negative || token.startsWith("+") ? token.substring(1) : token;
+            long value;
+            if (digits.startsWith("0x") || digits.startsWith("0X")) {
+                value = Long.parseLong(digits.substring(2), 16);
+            } else {
+                value = Long.parseLong(digits);
+            }
+            return negative ? -value : value;
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    // -------------------------
+    // Second pass
+    // -------------------------
+    private void resolveLabels() {
+        for (Fixup f : fixups) {
+            Instruction inst = result.instructions.get(f.index);
+            if (f.branch) {
+                Integer target = codeLabels.get(f.label);
+                if (target == null) {
+                    result.errors.add(new ParseError(f.line, "Undefined branch target '" + f.label + "'"));
+                } else {
+                    // Offsets count instructions from the one after the branch
+                    inst.immediate = target - (f.index + 1);
+                }
+            } else {
+                Integer address = dataLabels.get(f.label);
+                if (address == null) {
+                    result.errors.add(new ParseError(f.line, "Undefined data label '" + f.label + "'"));
+                } else {
+                    inst.immediate = address;
+                }
+            }
+        }
+        // Fixup errors were found after the rest; keep the list in line order
+        Collections.sort(result.errors, (a, b) -> Integer.compare(a.line, b.line));
     }
 }
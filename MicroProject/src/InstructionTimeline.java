@@ -0,0 +1,106 @@
+import java.util.Arrays;
+
+// Per dynamic instruction: the cycles it issued, started and finished executing and
+// wrote back (-1 until it happens). Indexed by issue sequence number, one primitive
+// array per field, so a run of a million instructions costs about 20 MB
+public class InstructionTimeline implements Undoable {
+    private int size = 0;
+    private int[] pc = new int[1024];
+    private int[] issue = new int[1024];
+    private int[] execStart = new int[1024];
+    private int[] execEnd = new int[1024];
+    private int[] writeBack = new int[1024];
+
+    // Step-back history, told before a stamp is overwritten (null = none). A replayed
+    // load overwrites its first start, so stamps cannot just be dropped by cycle
+    private SimulationHistory history;
+    private static final int SIZE = 0;
+    private static final int EXEC_START = 1;
+    private static final int EXEC_END = 2;
+    private static final int WRITE_BACK = 3;
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // Issue sequence numbers are handed out in order, so seq is always size
+    public void onIssue(int seq, int pcAtIssue, int cycle) {
+        if (seq >= pc.length) {
+            int capacity = Math.max(seq + 1, pc.length * 2);
+            pc = Arrays.copyOf(pc, capacity);
+            issue = Arrays.copyOf(issue, capacity);
+            execStart = Arrays.copyOf(execStart, capacity);
+            execEnd = Arrays.copyOf(execEnd, capacity);
+            writeBack = Arrays.copyOf(writeBack, capacity);
+        }
+        pc[seq] = pcAtIssue;
+        issue[seq] = cycle;
+        execStart[seq] = -1;
+        execEnd[seq] = -1;
+        writeBack[seq] = -1;
+        saving(SIZE, 0, size);
+        size = seq + 1;
+    }
+
+    // A replayed load starts again, replacing its first attempt
+    public void onExecStart(int seq, int cycle) {
+        saving(EXEC_START, seq, execStart[seq]);
+        saving(EXEC_END, seq, execEnd[seq]);
+        execStart[seq] = cycle;
+        execEnd[seq] = -1;
+    }
+
+    public void onExecEnd(int seq, int cycle) {
+        saving(EXEC_END, seq, execEnd[seq]);
+        execEnd[seq] = cycle;
+    }
+
+    public void onWriteBack(int seq, int cycle) {
+        saving(WRITE_BACK, seq, writeBack[seq]);
+        writeBack[seq] = cycle;
+    }
+
+    public void setHistory(SimulationHistory history) {
+        this.history = history;
+    }
+
+    private void saving(int field, int seq, int old) {
+        if (history != null) history.saveField(this, field, seq, old);
+    }
+
+    @Override
+    public void undoField(int field, int seq, long old) {
+        int value = (int) old;
+        switch (field) {
+            case SIZE: size = value; break;
+            case EXEC_START: execStart[seq] = value; break;
+            case EXEC_END: execEnd[seq] = value; break;
+            case WRITE_BACK: writeBack[seq] = value; break;
+            default: throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    public int getPc(int seq) {
+        return pc[seq];
+    }
+
+    public int getIssue(int seq) {
+        return issue[seq];
+    }
+
+    public int getExecStart(int seq) {
+        return execStart[seq];
+    }
+
+    public int getExecEnd(int seq) {
+        return execEnd[seq];
+    }
+
+    public int getWriteBack(int seq) {
+        return writeBack[seq];
+    }
+}
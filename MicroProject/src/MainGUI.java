@@ -1,12 +1,20 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.*;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.*;
+import javafx.collections.transformation.FilteredList;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
-import javafx.stage.Modality;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 public class MainGUI extends Application {
@@ -18,84 +26,167 @@ public class MainGUI extends Application {
     private ObservableList<GuiModels.RSRow> rsData = FXCollections.observableArrayList();
     private ObservableList<GuiModels.RSRow> addSubData = FXCollections.observableArrayList();
     private ObservableList<GuiModels.RSRow> mulDivData = FXCollections.observableArrayList();
+    private ObservableList<GuiModels.RSRow> intData = FXCollections.observableArrayList();
     private ObservableList<GuiModels.RSRow> loadData = FXCollections.observableArrayList();
     private ObservableList<GuiModels.RSRow> storeData = FXCollections.observableArrayList();
     private ObservableList<GuiModels.RegRow> regData = FXCollections.observableArrayList();
+    private Map<String, GuiModels.RegRow> regRows = new HashMap<>();
+    
+    // Only rows the simulator reports as changed are rewritten, unless the whole
+    // view has to be rebuilt (new simulator, register edits)
+    private boolean fullRefresh = true;
+    private String cacheStatsText = "";
+    
+    // Cache and memory inspectors. Their item lists are virtual (row i is just the
+    // number i), so only rows on screen are ever copied and formatted, whatever the sizes
+    private static final int MEMORY_BYTES_PER_ROW = 16;
+    private static final int MEMORY_ROWS_PER_PAGE = 1024;
+    private static final String TOUCHED_STYLE = "-fx-background-color: #fff3cd;";
+    private TableView<Integer> cacheTable;
+    private TableView<Integer> memoryTable;
+    private TimelineView timelineView;
+    private int memoryPage = 0;
+    private Label memoryPageLabel;
+    private TextField gotoAddressField;
+    private BitSet touchedBlocks = new BitSet();
+    private Set<Integer> touchedWords = new HashSet<>();
+    // Text of the rows on screen, copied from the simulator while holding its lock.
+    // Cells only read these, since JavaFX lays them out (e.g. while scrolling) at any
+    // time, also while a background run is stepping the simulator
+    private Set<TableRow<Integer>> cacheTableRows = Collections.newSetFromMap(new WeakHashMap<>());
+    private Set<TableRow<Integer>> memoryTableRows = Collections.newSetFromMap(new WeakHashMap<>());
+    private Map<Integer, String[]> cacheRowText = new HashMap<>();
+    private Map<Integer, String[]> memoryRowText = new HashMap<>();
+    private boolean rowCopyPending = false;
     
     private Stage primaryStage;
+    // Last program loaded from the text area or a file, reloaded after reconfiguring
+    private ProgramImage program;
     private TextArea programInput;
     private TextArea cacheDisplay;
     private Label cycleLabel;
     private Label pcLabel;
+    private Label physRegLabel;
+    
+    // Background runs: the worker steps the simulator while holding its lock, and the
+    // refresh timer takes the same lock to show a consistent state at most REFRESH_FPS times a second
+    private static final int REFRESH_FPS = 20;
+    private ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "simulation-runner");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean running = false;
+    private Future<?> runTask;
+    private AnimationTimer refreshTimer;
+    private long lastRefresh = 0;
+    private Button nextCycleBtn, runBtn, runNBtn, pauseBtn;
+    
+    // Multi-core runs use their own simulator on the same worker and stop after this many cycles
+    private static final int MULTI_CORE_CYCLES = 1_000_000;
+    private TextField runNField;
+    private Button stepBackBtn, jumpBtn;
+    
+    // Cycles of step-back history the GUI asks for unless the configuration changes it
+    private static final int STEP_BACK_CYCLES = 10000;
+    private TextField jumpField;
+    
+    // Cache misses and address clashes: the cycle observer appends to a ring buffer and each
+    // refresh moves the new events into the (virtualized) log list in one batch
+    private static final int LOG_CAPACITY = 5000;
+    private EventLog eventLog = new EventLog(LOG_CAPACITY);
+    private ObservableList<EventLog.Event> logData = FXCollections.observableArrayList();
+    private FilteredList<EventLog.Event> filteredLog = new FilteredList<>(logData);
+    private ComboBox<String> logKindBox;
+    private TextField logFilterField;
+    private Label logCountLabel;
 
     @Override
     public void start(Stage stage) {
         this.primaryStage = stage;
         config = new SimulatorConfig();
+        config.historyCycles = STEP_BACK_CYCLES;
         sim = new TomasuloSimulator(config);
+        attachObservers();
         
-        // Set up cache miss listener
-        sim.setCacheMissListener(new TomasuloSimulator.CacheMissListener() {
-            @Override
-            public void onCacheMiss(int address) {
-                showCacheMissAlert(address);
-            }
-        });
-        
-        // Set up address clash listener
-        sim.setAddressClashListener(new TomasuloSimulator.AddressClashListener() {
+        // Show configuration dialog first
+        showConfigDialog(true);
+    }
+    
+    private void attachObservers() {
+        eventLog.clear();
+        logData.clear();
+        final List<ReservationStation> stations = sim.getAllStations();
+        sim.subscribe(new TomasuloSimulator.CycleObserver() {
             @Override
-            public void onAddressClash(String stationName, int address, String reason) {
-                showAddressClashAlert(stationName, address, reason);
+            public void onCycle(CycleDelta delta) {
+                for (int address : delta.cacheMisses) {
+                    eventLog.add(delta.cycle, EventLog.Kind.CACHE_MISS, "address " + address);
+                }
+                for (CycleDelta.Stall stall : delta.stalls) {
+                    if (stall.reason != CycleDelta.StallReason.ADDRESS_CLASH
+                            && stall.reason != CycleDelta.StallReason.LOAD_REPLAY) continue;
+                    eventLog.add(delta.cycle, EventLog.Kind.ADDRESS_CLASH, 
+                                 stations.get(stall.station).name + " at address " + stall.address + ": " + stall.reason.label);
+                }
             }
         });
-        
-        // Show configuration dialog first
-        showConfigDialog(true);
     }
     
     private void showConfigDialog(boolean isInitial) {
+        stopRun();
         ConfigDialog dialog = new ConfigDialog(primaryStage, config);
         boolean okClicked = dialog.showAndWait();
         
-        if (okClicked) {
+        // A configuration the simulator cannot be built from is dropped; the previous
+        // one stays in effect
+        TomasuloSimulator configured = okClicked ? createSimulator(dialog.getConfig()) : null;
+        if (configured != null) {
             config = dialog.getConfig();
+            sim = configured;
+            attachObservers();
             
             if (isInitial) {
                 // First time - create the GUI
                 createGUI();
             } else {
-                // Reconfigure - recreate simulator
-                String currentProgram = programInput.getText();
-                sim = new TomasuloSimulator(config);
-                
-                sim.setCacheMissListener(new TomasuloSimulator.CacheMissListener() {
-                    @Override
-                    public void onCacheMiss(int address) {
-                        showCacheMissAlert(address);
-                    }
-                });
-                
-                sim.setAddressClashListener(new TomasuloSimulator.AddressClashListener() {
-                    @Override
-                    public void onAddressClash(String stationName, int address, String reason) {
-                        showAddressClashAlert(stationName, address, reason);
-                    }
-                });
-                
+                // Reconfigure - tables follow the new simulator
                 reinitTables();
-                if (!currentProgram.isEmpty()) {
-                    List<Instruction> prog = InstructionParser.parse(currentProgram);
-                    sim.loadProgram(prog);
+                if (program != null) {
+                    // The new memory may be too small for the program's data
+                    String problem = program.checkData(config.memorySize);
+                    if (problem == null) {
+                        sim.loadProgram(program);
+                    } else {
+                        program = null;
+                        showParseErrors("the previous program", problem);
+                    }
                 }
                 refreshTables();
             }
         } else if (isInitial) {
-            // User cancelled on first dialog - use defaults and continue
+            // User cancelled on first dialog (or its settings failed) - use defaults and continue
             createGUI();
         }
     }
     
+    // Builds a simulator, or reports why the configuration does not work (e.g. the
+    // mapped backend cannot open its memory file) and returns null
+    private TomasuloSimulator createSimulator(SimulatorConfig cfg) {
+        try {
+            return new TomasuloSimulator(cfg);
+        } catch (RuntimeException ex) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.initOwner(primaryStage);
+            alert.setTitle("Configuration Error");
+            alert.setHeaderText("Could not set up the simulator");
+            alert.setContentText(ex.getCause() == null ? ex.toString() 
+                                 : ex.getMessage() + "\n" + ex.getCause());
+            alert.showAndWait();
+            return null;
+        }
+    }
+    
     private void createGUI() {
         // Initialize data BEFORE creating tables
         initTables();
@@ -111,17 +202,26 @@ public class MainGUI extends Application {
         pcLabel = new Label("PC: 0");
         pcLabel.setStyle("-fx-font-size: 16px; -fx-font-weight: bold;");
         
-        statusBox.getChildren().addAll(cycleLabel, pcLabel);
+        physRegLabel = new Label("Free Phys Regs: 0");
+        physRegLabel.setStyle("-fx-font-size: 16px; -fx-font-weight: bold;");
+        
+        statusBox.getChildren().addAll(cycleLabel, pcLabel, physRegLabel);
         
         Label lblAddSub = new Label("FP ADD / SUB Stations");
         Label lblMulDiv = new Label("FP MUL / DIV Stations");
+        Label lblInt = new Label("Integer / Branch Stations");
         Label lblLoad = new Label("Load Buffers");
         Label lblStore = new Label("Store Buffers");
         Label lblRegs = new Label("Register File");
         Label lblCache = new Label("Cache Status");
+        Label lblLog = new Label("Event Log");
+        Label lblCacheBlocks = new Label("Cache Blocks (touched this cycle highlighted)");
+        Label lblMemory = new Label("Memory");
+        Label lblTimeline = new Label("Pipeline Timeline (blue: issue, grey: waiting, green: executing, orange: write-back; shift+wheel scrolls cycles)");
 
         TableView<GuiModels.RSRow> addSubTable = createRSTable(addSubData);
         TableView<GuiModels.RSRow> mulDivTable = createRSTable(mulDivData);
+        TableView<GuiModels.RSRow> intTable = createRSTable(intData);
         TableView<GuiModels.RSRow> loadTable = createRSTable(loadData);
         TableView<GuiModels.RSRow> storeTable = createRSTable(storeData);
         TableView<GuiModels.RegRow> regTable = createRegisterTable();
@@ -130,11 +230,50 @@ public class MainGUI extends Application {
         programInput.setPrefHeight(100);
         programInput.setPromptText("Enter assembly instructions here...");
         
+        cacheTable = createCacheTable();
+        memoryTable = createMemoryTable();
+        timelineView = new TimelineView();
+        
+        Button prevPageBtn = new Button("<");
+        prevPageBtn.setOnAction(e -> showMemoryPage(memoryPage - 1));
+        Button nextPageBtn = new Button(">");
+        nextPageBtn.setOnAction(e -> showMemoryPage(memoryPage + 1));
+        memoryPageLabel = new Label();
+        gotoAddressField = new TextField();
+        gotoAddressField.setPromptText("Address (e.g. 256 or 0x100)");
+        gotoAddressField.setOnAction(e -> gotoMemoryAddress());
+        Button gotoBtn = new Button("Go");
+        gotoBtn.setOnAction(e -> gotoMemoryAddress());
+        HBox memoryControls = new HBox(10, prevPageBtn, nextPageBtn, memoryPageLabel, gotoAddressField, gotoBtn);
+        
         cacheDisplay = new TextArea();
         cacheDisplay.setPrefHeight(100);
         cacheDisplay.setEditable(false);
         cacheDisplay.setStyle("-fx-font-family: monospace;");
         
+        ListView<EventLog.Event> logView = new ListView<>(filteredLog);
+        logView.setPrefHeight(120);
+        logView.setStyle("-fx-font-family: monospace;");
+        
+        logKindBox = new ComboBox<>();
+        logKindBox.getItems().add("All");
+        for (EventLog.Kind kind : EventLog.Kind.values()) {
+            logKindBox.getItems().add(kind.label);
+        }
+        logKindBox.setValue("All");
+        logKindBox.setOnAction(e -> updateLogFilter());
+        
+        logFilterField = new TextField();
+        logFilterField.setPromptText("Filter (station, address...)");
+        logFilterField.textProperty().addListener((obs, oldText, newText) -> updateLogFilter());
+        
+        logCountLabel = new Label();
+        
+        Button clearLogBtn = new Button("Clear Log");
+        clearLogBtn.setOnAction(e -> logData.clear());
+        
+        HBox logControls = new HBox(10, logKindBox, logFilterField, clearLogBtn, logCountLabel);
+        
         Button configBtn = new Button("Configuration");
         configBtn.setOnAction(e -> showConfigDialog(false));
         
@@ -143,40 +282,103 @@ public class MainGUI extends Application {
         
         Button loadProgramBtn = new Button("Load Program");
         loadProgramBtn.setOnAction(e -> {
-            List<Instruction> prog = InstructionParser.parse(programInput.getText());
-            sim.loadProgram(prog);
-            refreshTables();
+            try {
+                loadProgram(InstructionParser.parse(new StringReader(programInput.getText()), config.memorySize), 
+                            "program");
+            } catch (IOException ex) {
+                showParseErrors("program", ex.getMessage());
+            }
+        });
+        
+        // Large files go straight to the simulator without passing through the text area.
+        // Program images (see ProgramImage) are mapped and loaded without parsing
+        Button loadFileBtn = new Button("Load File");
+        loadFileBtn.setOnAction(e -> {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Load Assembly Program or Program Image");
+            File file = chooser.showOpenDialog(primaryStage);
+            if (file == null) return;
+            try {
+                boolean loaded = ProgramImage.isImage(file)
+                        ? loadProgram(ProgramImage.load(file, config.memorySize), file.getName())
+                        : loadProgram(InstructionParser.parseFile(file, config.memorySize), file.getName());
+                if (loaded) {
+                    programInput.clear();
+                    programInput.setPromptText("Loaded " + file.getName() + ": " 
+                                               + program.size() + " instructions");
+                }
+            } catch (IOException ex) {
+                showParseErrors(file.getName(), "Could not read file: " + ex.getMessage());
+            }
         });
 
-        Button nextCycleBtn = new Button("Next Cycle");
+        nextCycleBtn = new Button("Next Cycle");
         nextCycleBtn.setOnAction(e -> {
             sim.step();
             refreshTables();
         });
         
+        stepBackBtn = new Button("Step Back");
+        stepBackBtn.setOnAction(e -> {
+            if (!sim.canStepBack()) return;
+            sim.stepBack();
+            fullRefresh = true;
+            refreshTables();
+        });
+        
+        jumpField = new TextField();
+        jumpField.setPromptText("cycle");
+        jumpField.setPrefWidth(70);
+        jumpBtn = new Button("Go to Cycle");
+        jumpBtn.setOnAction(e -> jumpToCycle());
+        
+        runBtn = new Button("Run");
+        runBtn.setOnAction(e -> startRun(Long.MAX_VALUE));
+        
+        runNField = new TextField("100");
+        runNField.setPrefWidth(70);
+        runNBtn = new Button("Run N");
+        runNBtn.setOnAction(e -> {
+            try {
+                startRun(Long.parseLong(runNField.getText().trim()));
+            } catch (NumberFormatException ex) {
+                runNField.setText("100");
+            }
+        });
+        
+        pauseBtn = new Button("Pause");
+        pauseBtn.setDisable(true);
+        pauseBtn.setOnAction(e -> stopRun());
+        
         Button resetBtn = new Button("Reset");
         resetBtn.setOnAction(e -> {
-            sim = new TomasuloSimulator(config);
-            
-            sim.setCacheMissListener(new TomasuloSimulator.CacheMissListener() {
-                @Override
-                public void onCacheMiss(int address) {
-                    showCacheMissAlert(address);
-                }
-            });
-            
-            sim.setAddressClashListener(new TomasuloSimulator.AddressClashListener() {
-                @Override
-                public void onAddressClash(String stationName, int address, String reason) {
-                    showAddressClashAlert(stationName, address, reason);
-                }
-            });
+            stopRun();
+            TomasuloSimulator fresh = createSimulator(config);
+            if (fresh == null) return;
+            sim = fresh;
+            attachObservers();
             
             reinitTables();
             refreshTables();
         });
         
-        HBox buttonBox = new HBox(10, configBtn, initRegBtn, loadProgramBtn, nextCycleBtn, resetBtn);
+        Button multiCoreBtn = new Button("Run on Cores");
+        multiCoreBtn.setOnAction(e -> runMultiCore());
+        
+        HBox buttonBox = new HBox(10, configBtn, initRegBtn, loadProgramBtn, loadFileBtn, stepBackBtn, nextCycleBtn, 
+                                  jumpField, jumpBtn, runBtn, runNField, runNBtn, pauseBtn, resetBtn, multiCoreBtn);
+        
+        refreshTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (now - lastRefresh < 1_000_000_000L / REFRESH_FPS) return;
+                lastRefresh = now;
+                TomasuloSimulator current = sim;
+                synchronized (current) {
+                    refreshTables();
+                }
+            }
+        };
 
         VBox root = new VBox(
             10,
@@ -187,6 +389,8 @@ public class MainGUI extends Application {
             addSubTable,
             lblMulDiv,
             mulDivTable,
+            lblInt,
+            intTable,
             lblLoad,
             loadTable,
             lblStore,
@@ -194,12 +398,25 @@ public class MainGUI extends Application {
             lblRegs,
             regTable,
             lblCache,
-            cacheDisplay
+            cacheDisplay,
+            lblCacheBlocks,
+            cacheTable,
+            lblMemory,
+            memoryControls,
+            memoryTable,
+            lblTimeline,
+            timelineView,
+            lblLog,
+            logControls,
+            logView
         );
 
         root.setPadding(new Insets(10));
+        
+        ScrollPane scroll = new ScrollPane(root);
+        scroll.setFitToWidth(true);
 
-        Scene scene = new Scene(root, 1050, 900);
+        Scene scene = new Scene(scroll, 1050, 1000);
 
         primaryStage.setTitle("Tomasulo Simulator");
         primaryStage.setScene(scene);
@@ -208,9 +425,157 @@ public class MainGUI extends Application {
         refreshTables();
     }
     
+    // Steps the simulator on the worker until it drains, cycles have run, or Pause is pressed
+    private void startRun(final long cycles) {
+        if (running || cycles <= 0) return;
+        running = true;
+        setRunning(true);
+        refreshTimer.start();
+        
+        final TomasuloSimulator target = sim;
+        runTask = runner.submit(() -> {
+            try {
+                for (long done = 0; running && done < cycles && !target.isDone(); done++) {
+                    synchronized (target) {
+                        target.step();
+                    }
+                }
+            } finally {
+                running = false;
+                Platform.runLater(() -> {
+                    refreshTimer.stop();
+                    setRunning(false);
+                    refreshTables();
+                });
+            }
+        });
+    }
+    
+    // Asks the worker to stop and waits for the cycle in progress to finish
+    private void stopRun() {
+        running = false;
+        if (runTask != null) {
+            try {
+                runTask.get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+            runTask = null;
+        }
+    }
+    
+    // Loads a parsed program and its data segment, or lists its errors and keeps the old one
+    private boolean loadProgram(InstructionParser.Result parsed, String source) {
+        stopRun();
+        if (parsed.hasErrors()) {
+            showParseErrors(source, parsed.errors.size() + " error(s):\n" + parsed.errorSummary(30));
+            return false;
+        }
+        return loadProgram(parsed.toImage(), source);
+    }
+    
+    private boolean loadProgram(ProgramImage image, String source) {
+        stopRun();
+        String problem = image.checkData(config.memorySize);
+        if (problem != null) {
+            showParseErrors(source, problem);
+            return false;
+        }
+        program = image;
+        sim.loadProgram(image);
+        fullRefresh = true;
+        refreshTables();
+        return true;
+    }
+    
+    private void showParseErrors(String source, String details) {
+        showReport(Alert.AlertType.ERROR, "Program Errors", "Could not load " + source, details);
+    }
+    
+    private void showReport(Alert.AlertType type, String title, String header, String details) {
+        Alert alert = new Alert(type);
+        alert.initOwner(primaryStage);
+        alert.setTitle(title);
+        alert.setHeaderText(header);
+        TextArea text = new TextArea(details);
+        text.setEditable(false);
+        text.setPrefRowCount(12);
+        alert.getDialogPane().setContent(text);
+        alert.showAndWait();
+    }
+    
+    // Runs the loaded program on config.numCores coherent cores sharing one memory, then
+    // shows per-core and bus statistics. The single-core view is left as it is
+    private void runMultiCore() {
+        if (program == null) {
+            showReport(Alert.AlertType.INFORMATION, "Multi-Core Run", "No program loaded", 
+                       "Load a program or file first; every core runs it.");
+            return;
+        }
+        stopRun();
+        final ProgramImage image = program;
+        final SimulatorConfig cores = config;
+        runner.submit(() -> {
+            String report;
+            MultiCoreSimulator multi = null;
+            try {
+                multi = new MultiCoreSimulator(cores);
+                for (int core = 0; core < cores.numCores; core++) {
+                    multi.loadProgram(core, image);
+                }
+                multi.run(MULTI_CORE_CYCLES);
+                report = String.join("\n", multi.getStats());
+            } catch (RuntimeException ex) {
+                report = "The run failed: " + ex;
+            } finally {
+                if (multi != null) multi.shutdown();
+            }
+            final String details = report;
+            Platform.runLater(() -> showReport(Alert.AlertType.INFORMATION, "Multi-Core Run", 
+                    cores.numCores + " core(s), " + cores.coherenceProtocol, details));
+        });
+    }
+    
+    // Cycles before the current one are restored from the history (clamped to the
+    // oldest one kept); later cycles are simulated as a background run
+    private void jumpToCycle() {
+        int cycle;
+        try {
+            cycle = Integer.parseInt(jumpField.getText().trim());
+        } catch (NumberFormatException ex) {
+            jumpField.setText(String.valueOf(sim.clockCycle));
+            return;
+        }
+        if (cycle >= sim.clockCycle) {
+            startRun(cycle - sim.clockCycle);
+            return;
+        }
+        int oldest = sim.history == null ? sim.clockCycle : sim.history.oldestCycle();
+        if (cycle < oldest) {
+            cycle = oldest;
+            jumpField.setText(String.valueOf(cycle));
+        }
+        sim.jumpTo(cycle);
+        fullRefresh = true;
+        refreshTables();
+    }
+    
+    private void setRunning(boolean isRunning) {
+        stepBackBtn.setDisable(isRunning);
+        jumpBtn.setDisable(isRunning);
+        nextCycleBtn.setDisable(isRunning);
+        runBtn.setDisable(isRunning);
+        runNBtn.setDisable(isRunning);
+        pauseBtn.setDisable(!isRunning);
+    }
+    
     private void showRegisterInitDialog() {
+        stopRun();
         RegisterInitDialog dialog = new RegisterInitDialog(primaryStage, sim.registers);
         if (dialog.showAndWait()) {
+            // Edits are not part of the recorded cycles, so earlier ones can no longer be undone
+            if (sim.history != null) sim.history.clear();
+            fullRefresh = true;
             refreshTables();
         }
     }
@@ -220,6 +585,7 @@ public class MainGUI extends Application {
         rsData.clear();
         addSubData.clear();
         mulDivData.clear();
+        intData.clear();
         loadData.clear();
         storeData.clear();
         regData.clear();
@@ -237,6 +603,12 @@ public class MainGUI extends Application {
             rsData.add(row);
         }
         
+        for (ReservationStation rs : sim.intStations) {
+            GuiModels.RSRow row = new GuiModels.RSRow(rs);
+            intData.add(row);
+            rsData.add(row);
+        }
+        
         for (ReservationStation rs : sim.loadBuffers) {
             GuiModels.RSRow row = new GuiModels.RSRow(rs);
             loadData.add(row);
@@ -254,12 +626,17 @@ public class MainGUI extends Application {
             regData.add(new GuiModels.RegRow("R" + i));
         for (int i = 0; i < 16; i++)
             regData.add(new GuiModels.RegRow("F" + i));
+        regRows.clear();
+        for (GuiModels.RegRow r : regData)
+            regRows.put(r.getReg(), r);
+        fullRefresh = true;
     }
     
     private void reinitTables() {
         rsData.clear();
         addSubData.clear();
         mulDivData.clear();
+        intData.clear();
         loadData.clear();
         storeData.clear();
         
@@ -275,6 +652,12 @@ public class MainGUI extends Application {
             rsData.add(row);
         }
         
+        for (ReservationStation rs : sim.intStations) {
+            GuiModels.RSRow row = new GuiModels.RSRow(rs);
+            intData.add(row);
+            rsData.add(row);
+        }
+        
         for (ReservationStation rs : sim.loadBuffers) {
             GuiModels.RSRow row = new GuiModels.RSRow(rs);
             loadData.add(row);
@@ -286,6 +669,7 @@ public class MainGUI extends Application {
             storeData.add(row);
             rsData.add(row);
         }
+        fullRefresh = true;
     }
 
 
@@ -294,116 +678,254 @@ public class MainGUI extends Application {
         // Update cycle and PC
         cycleLabel.setText("Clock Cycle: " + sim.clockCycle);
         pcLabel.setText("PC: " + sim.pc);
+        physRegLabel.setText("Free Phys Regs: " + sim.physRegs.freeCount() + "/" + sim.physRegs.size() 
+                             + ", executing outside stations: " + sim.physRegs.executing.cardinality());
         
-        // RS update
+        BitSet changedStations = sim.drainDirtyStations();
+        Set<String> changedRegs = sim.registers.drainDirty();
+        BitSet changedBlocks = sim.cache.drainDirtyBlocks();
+        
+        // RS update: changed stations, plus executing ones whose latency counts down
         for (GuiModels.RSRow row : rsData) {
             ReservationStation rs = row.rs;
-            row.busyProperty().set(rs.busy ? "Yes" : "No");
-            row.opProperty().set(rs.op == null ? "-" : rs.op);
-            row.VjProperty().set(rs.Vj == null ? "-" : rs.Vj);
-            row.VkProperty().set(rs.Vk == null ? "-" : rs.Vk);
-            row.QjProperty().set(rs.Qj == null ? "-" : rs.Qj);
-            row.QkProperty().set(rs.Qk == null ? "-" : rs.Qk);
-            row.latencyProperty().set(Integer.toString(rs.latencyRemaining));
+            if (!fullRefresh && !changedStations.get(rs.id) && !rs.isExecuting()) continue;
+            row.busyProperty().set(rs.isBusy() ? "Yes" : "No");
+            row.opProperty().set(rs.getOp() == null ? "-" : rs.getOp().toString());
+            row.VjProperty().set(rs.getVj() == null ? "-" : rs.getVj());
+            row.VkProperty().set(rs.getVk() == null ? "-" : rs.getVk());
+            row.QjProperty().set(rs.getQj() == null ? "-" : rs.getQj());
+            row.QkProperty().set(rs.getQk() == null ? "-" : rs.getQk());
+            row.latencyProperty().set(Integer.toString(sim.getLatencyRemaining(rs)));
         }
 
         // Register file update
-        for (GuiModels.RegRow r : regData) {
-            RegisterFile.Register reg = sim.registers.get(r.getReg());
-            if (reg != null) {
-                // Format the value based on register type
-                String valueStr;
-                if (r.getReg().startsWith("F")) {
-                    // Floating point register - show with decimals
-                    valueStr = String.format("%.4f", reg.value);
-                } else {
-                    // Integer register - show as integer
-                    valueStr = String.format("%d", (int)reg.value);
+        if (fullRefresh) {
+            for (GuiModels.RegRow r : regData) {
+                updateRegisterRow(r);
+            }
+        } else {
+            for (String name : changedRegs) {
+                GuiModels.RegRow r = regRows.get(name);
+                if (r != null) {
+                    updateRegisterRow(r);
                 }
-                r.valueProperty().set(valueStr);
-                r.tagProperty().set(reg.tag == null ? "-" : reg.tag);
             }
         }
         
         // Cache update
-        updateCacheDisplay();
+        updateCacheDisplay(changedBlocks);
+        timelineView.update(sim);
+        fullRefresh = false;
+        
+        updateEventLog();
     }
     
-    private void updateCacheDisplay() {
-        List<String> cacheStatus = sim.cache.getCacheStatus();
+    // Moves newly recorded events into the log list, keeping at most LOG_CAPACITY of them
+    private void updateEventLog() {
+        List<EventLog.Event> batch = eventLog.drainNew();
+        if (!batch.isEmpty()) {
+            logData.addAll(batch);
+            if (logData.size() > LOG_CAPACITY) {
+                logData.remove(0, logData.size() - LOG_CAPACITY);
+            }
+        }
+        long dropped = eventLog.getDropped();
+        logCountLabel.setText(filteredLog.size() + " of " + logData.size() + " events" + 
+                              (dropped > 0 ? " (" + dropped + " dropped)" : ""));
+    }
+    
+    private void updateLogFilter() {
+        final String kind = logKindBox.getValue();
+        final String text = logFilterField.getText().trim().toLowerCase();
+        filteredLog.setPredicate(event -> 
+            ("All".equals(kind) || event.kind.label.equals(kind)) &&
+            (text.isEmpty() || event.text.toLowerCase().contains(text)));
+        updateEventLog();
+    }
+    
+    private void updateRegisterRow(GuiModels.RegRow r) {
+        RegisterFile.Register reg = sim.registers.get(r.getReg());
+        if (reg != null) {
+            // Format the value based on register type
+            String valueStr;
+            if (r.getReg().startsWith("F")) {
+                // Floating point register - show with decimals
+                valueStr = String.format("%.4f", reg.value);
+            } else {
+                // Integer register - show as integer
+                valueStr = Integer.toString((int)reg.value);
+            }
+            r.valueProperty().set(valueStr);
+            r.tagProperty().set(reg.tag == null ? "-" : reg.tag);
+        }
+    }
+    
+    // The statistics text is rewritten only when it changed; the block and memory
+    // tables only re-render their visible rows, and only when blocks changed or were touched
+    private void updateCacheDisplay(BitSet changedBlocks) {
+        Cache cache = sim.cache;
+        if (fullRefresh) {
+            cacheRowText.clear();
+            cacheTable.setItems(indexList(cache.getNumBlocks()));
+            showMemoryPage(memoryPage);
+        }
+        
+        BitSet blocks = cache.getTouchedBlocks();
+        Set<Integer> words = cache.getTouchedWords();
+        if (fullRefresh || !changedBlocks.isEmpty() || !blocks.equals(touchedBlocks)) {
+            copyCacheRows();
+            cacheTable.refresh();
+        }
+        // Evicted blocks are written back, so they change memory too
+        if (fullRefresh || !changedBlocks.isEmpty() || !words.isEmpty() || !words.equals(touchedWords)) {
+            copyMemoryRows();
+            memoryTable.refresh();
+        }
+        touchedBlocks = blocks;
+        touchedWords = words;
+        
         StringBuilder sb = new StringBuilder();
         sb.append(String.format("Cache: %d bytes, Block: %d bytes, Blocks: %d\n", 
                   sim.config.cacheSize, sim.config.blockSize, 
                   sim.config.cacheSize / sim.config.blockSize));
+        
         sb.append("----------------------------------------\n");
+        for (String line : sim.getStallStats()) {
+            sb.append(line).append("\n");
+        }
         
-        int validBlocks = 0;
-        for (String status : cacheStatus) {
-            if (status.contains("Valid")) {
-                sb.append(status).append("\n");
-                validBlocks++;
+        if (cache.memoryController != null) {
+            sb.append("----------------------------------------\n");
+            for (String line : cache.memoryController.getStats()) {
+                sb.append(line).append("\n");
             }
         }
         
-        if (validBlocks == 0) {
-            sb.append("(Cache is empty)\n");
+        for (String line : cache.getVictimStats()) {
+            sb.append(line).append("\n");
         }
         
-        cacheDisplay.setText(sb.toString());
-    }
-    
-    private void showCacheMissAlert(int address) {
-        Stage alertStage = new Stage();
-        alertStage.setTitle("Cache Miss");
-        alertStage.initModality(Modality.APPLICATION_MODAL);
-        alertStage.initOwner(primaryStage);
-        
-        VBox alertBox = new VBox(15);
-        alertBox.setPadding(new Insets(20));
-        alertBox.setStyle("-fx-alignment: center; -fx-background-color: #fff3cd; -fx-border-color: #ffc107; -fx-border-width: 2;");
-        
-        Label titleLabel = new Label("⚠ Cache Miss Detected");
-        titleLabel.setStyle("-fx-font-size: 16px; -fx-font-weight: bold; -fx-text-fill: #856404;");
-        
-        Label messageLabel = new Label(String.format("Address: %d\nFetching block from memory...", address));
-        messageLabel.setStyle("-fx-font-size: 14px; -fx-text-fill: #856404;");
-        
-        Button okBtn = new Button("OK");
-        okBtn.setPrefWidth(80);
-        okBtn.setOnAction(ev -> alertStage.close());
+        if (cache.prefetcher != null) {
+            sb.append("----------------------------------------\n");
+            sb.append("Prefetcher: ").append(sim.config.prefetcher).append("\n");
+            for (String line : cache.getPrefetchStats()) {
+                sb.append(line).append("\n");
+            }
+        }
         
-        alertBox.getChildren().addAll(titleLabel, messageLabel, okBtn);
+        if (sim.history != null) {
+            sb.append("----------------------------------------\n");
+            for (String line : sim.history.getStats()) {
+                sb.append(line).append("\n");
+            }
+        }
         
-        alertStage.setScene(new Scene(alertBox, 320, 150));
-        alertStage.showAndWait();
+        String statsText = sb.toString();
+        if (!statsText.equals(cacheStatsText)) {
+            cacheStatsText = statsText;
+            cacheDisplay.setText(statsText);
+        }
     }
     
-    private void showAddressClashAlert(String stationName, int address, String reason) {
-        Stage alertStage = new Stage();
-        alertStage.setTitle("Address Clash");
-        alertStage.initModality(Modality.APPLICATION_MODAL);
-        alertStage.initOwner(primaryStage);
-        
-        VBox alertBox = new VBox(15);
-        alertBox.setPadding(new Insets(20));
-        alertBox.setStyle("-fx-alignment: center; -fx-background-color: #f8d7da; -fx-border-color: #dc3545; -fx-border-width: 2;");
-        
-        Label titleLabel = new Label("🔒 Address Clash Detected");
-        titleLabel.setStyle("-fx-font-size: 16px; -fx-font-weight: bold; -fx-text-fill: #721c24;");
-        
-        Label messageLabel = new Label(String.format("Station: %s\nAddress: %d\n%s", stationName, address, reason));
-        messageLabel.setStyle("-fx-font-size: 14px; -fx-text-fill: #721c24;");
-        
-        Button okBtn = new Button("OK");
-        okBtn.setPrefWidth(80);
-        okBtn.setOnAction(ev -> alertStage.close());
-        
-        alertBox.getChildren().addAll(titleLabel, messageLabel, okBtn);
-        
-        alertStage.setScene(new Scene(alertBox, 380, 180));
-        alertStage.showAndWait();
+    private int memoryRowCount() {
+        return (sim.memory.size() + MEMORY_BYTES_PER_ROW - 1) / MEMORY_BYTES_PER_ROW;
     }
-
+    
+    private int memoryPageCount() {
+        return Math.max(1, (memoryRowCount() + MEMORY_ROWS_PER_PAGE - 1) / MEMORY_ROWS_PER_PAGE);
+    }
+    
+    // Memory is paged so even a gigabyte address space is a short, virtual row list
+    private void showMemoryPage(int page) {
+        memoryPage = Math.max(0, Math.min(page, memoryPageCount() - 1));
+        memoryRowText.clear();
+        int firstRow = memoryPage * MEMORY_ROWS_PER_PAGE;
+        memoryTable.setItems(indexList(Math.min(MEMORY_ROWS_PER_PAGE, memoryRowCount() - firstRow)));
+        memoryPageLabel.setText("Page " + (memoryPage + 1) + " / " + memoryPageCount());
+    }
+    
+    private void gotoMemoryAddress() {
+        try {
+            String text = gotoAddressField.getText().trim().toLowerCase();
+            int address = text.startsWith("0x") ? Integer.parseInt(text.substring(2), 16) : Integer.parseInt(text);
+            if (address < 0 || address >= sim.memory.size()) return;
+            int row = address / MEMORY_BYTES_PER_ROW;
+            showMemoryPage(row / MEMORY_ROWS_PER_PAGE);
+            memoryTable.scrollTo(row % MEMORY_ROWS_PER_PAGE);
+            memoryTable.getSelectionModel().select(row % MEMORY_ROWS_PER_PAGE);
+        } catch (NumberFormatException ex) {
+            gotoAddressField.selectAll();
+        }
+    }
+    
+    private int memoryRowAddress(int row) {
+        return (memoryPage * MEMORY_ROWS_PER_PAGE + row) * MEMORY_BYTES_PER_ROW;
+    }
+    
+    // Copies the text of the cache and memory rows on screen. Must hold the simulator's lock
+    private void copyCacheRows() {
+        Cache cache = sim.cache;
+        for (TableRow<Integer> row : cacheTableRows) {
+            Integer i = row.getItem();
+            if (i == null || i >= cache.getNumBlocks()) continue;
+            String[] text = {"No", "-", "-", ""};
+            if (cache.isBlockValid(i)) {
+                StringBuilder sb = new StringBuilder();
+                for (int b = 0; b < cache.getBlockSize(); b++) {
+                    if (b > 0 && b % 4 == 0) sb.append(' ');
+                    sb.append(String.format("%02X", cache.getBlockByte(i, b)));
+                }
+                text = new String[] {"Yes", Integer.toString(cache.getBlockTag(i)),
+                                     String.valueOf(cache.getBlockState(i)), sb.toString()};
+            }
+            cacheRowText.put(i, text);
+        }
+    }
+    
+    private void copyMemoryRows() {
+        for (TableRow<Integer> row : memoryTableRows) {
+            Integer r = row.getItem();
+            if (r == null || r >= memoryTable.getItems().size()) continue;
+            String[] text = new String[MEMORY_BYTES_PER_ROW / 4];
+            for (int w = 0; w < text.length; w++) {
+                int address = memoryRowAddress(r) + 4 * w;
+                text[w] = address + 4 <= sim.memory.size() ? String.format("%08X", sim.memory.loadWord(address)) : "";
+            }
+            memoryRowText.put(r, text);
+        }
+    }
+    
+    // Text of a copied row, or blank until rows just scrolled into view have been copied
+    private String rowText(Map<Integer, String[]> rows, int index, int column) {
+        String[] text = rows.get(index);
+        if (text != null) return text[column];
+        if (!rowCopyPending) {
+            rowCopyPending = true;
+            Platform.runLater(() -> {
+                rowCopyPending = false;
+                TomasuloSimulator current = sim;
+                synchronized (current) {
+                    copyCacheRows();
+                    copyMemoryRows();
+                }
+                cacheTable.refresh();
+                memoryTable.refresh();
+            });
+        }
+        return "";
+    }
+    
+    // A list of 0..size-1 that stores nothing
+    private static ObservableList<Integer> indexList(final int size) {
+        return FXCollections.observableList(new AbstractList<Integer>() {
+            @Override
+            public Integer get(int i) { return i; }
+            
+            @Override
+            public int size() { return size; }
+        });
+    }
+    
     /** TABLE DEFINITIONS **/
 
     private TableView<GuiModels.RSRow> createRSTable(ObservableList<GuiModels.RSRow> data) {
@@ -424,6 +946,70 @@ public class MainGUI extends Application {
         return table;
     }
 
+    private TableView<Integer> createCacheTable() {
+        TableView<Integer> table = new TableView<>();
+        table.setPrefHeight(150);
+        
+        table.getColumns().add(indexCol("Block", 70, i -> Integer.toString(i)));
+        table.getColumns().add(indexCol("Valid", 60, i -> rowText(cacheRowText, i, 0)));
+        table.getColumns().add(indexCol("Tag", 80, i -> rowText(cacheRowText, i, 1)));
+        table.getColumns().add(indexCol("State", 60, i -> rowText(cacheRowText, i, 2)));
+        table.getColumns().add(indexCol("Data", 560, i -> rowText(cacheRowText, i, 3)));
+        
+        // Blocks read, written or filled this cycle are highlighted
+        table.setRowFactory(t -> {
+            TableRow<Integer> row = new TableRow<Integer>() {
+                @Override
+                protected void updateItem(Integer index, boolean empty) {
+                    super.updateItem(index, empty);
+                    setStyle(!empty && index != null && touchedBlocks.get(index) ? TOUCHED_STYLE : "");
+                }
+            };
+            cacheTableRows.add(row);
+            return row;
+        });
+        return table;
+    }
+    
+    private TableView<Integer> createMemoryTable() {
+        TableView<Integer> table = new TableView<>();
+        table.setPrefHeight(200);
+        
+        table.getColumns().add(indexCol("Address", 110, row -> String.format("0x%08X", memoryRowAddress(row))));
+        for (int w = 0; w < MEMORY_BYTES_PER_ROW; w += 4) {
+            final int offset = w;
+            TableColumn<Integer, String> c = indexCol(String.format("+%X", w), 110, 
+                                                      row -> rowText(memoryRowText, row, offset / 4));
+            // Words read or written this cycle are highlighted
+            c.setCellFactory(col -> new TableCell<Integer, String>() {
+                @Override
+                protected void updateItem(String text, boolean empty) {
+                    super.updateItem(text, empty);
+                    setText(empty ? null : text);
+                    Integer row = empty || getIndex() < 0 || getIndex() >= getTableView().getItems().size()
+                                  ? null : getTableView().getItems().get(getIndex());
+                    setStyle(row != null && touchedWords.contains(memoryRowAddress(row) + offset) ? TOUCHED_STYLE : "");
+                }
+            });
+            table.getColumns().add(c);
+        }
+        table.setRowFactory(t -> {
+            TableRow<Integer> row = new TableRow<>();
+            memoryTableRows.add(row);
+            return row;
+        });
+        return table;
+    }
+    
+    // Column whose text is computed from the row index when the cell is shown
+    private TableColumn<Integer, String> indexCol(String name, int width, java.util.function.IntFunction<String> text) {
+        TableColumn<Integer, String> c = new TableColumn<>(name);
+        c.setCellValueFactory(cell -> new ReadOnlyStringWrapper(text.apply(cell.getValue())));
+        c.setPrefWidth(width);
+        c.setSortable(false);
+        return c;
+    }
+
     private TableView<GuiModels.RegRow> createRegisterTable() {
         TableView<GuiModels.RegRow> table = new TableView<>();
         table.setPrefHeight(120);
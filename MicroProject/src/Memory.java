@@ -1,17 +1,130 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
 public class Memory {
-    public byte[] mem = new byte[4096];
+    // Big-endian byte store; a heap array, a direct (off-heap) buffer or a mapped file
+    private ByteBuffer view;
+    private byte[] array;      // the heap array behind view, or null for the other backends
+
+    // Told about every store before it lands, so the overwritten bytes can be kept
+    public interface StoreObserver {
+        void beforeStore(int address, int length);
+    }
+    private StoreObserver storeObserver;
+
+    public Memory() {
+        this(4096);
+    }
+
+    public Memory(int size) {
+        this(ByteBuffer.wrap(new byte[size]));
+    }
+
+    private Memory(ByteBuffer view) {
+        this.view = view;
+        this.array = view.hasArray() ? view.array() : null;
+    }
+
+    // Builds the backend selected in the config. Off-heap and mapped memory live
+    // outside the Java heap, so large address spaces do not add GC work
+    public static Memory create(SimulatorConfig config) {
+        switch (config.memoryBackend) {
+            case "offheap":
+                return new Memory(ByteBuffer.allocateDirect(config.memorySize));
+            case "mapped":
+                return mapped(config.memoryFile, config.memorySize);
+            default:
+                return new Memory(config.memorySize);
+        }
+    }
+
+    // The file is grown to size if needed and keeps its contents between runs
+    public static Memory mapped(String path, int size) {
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw");
+             FileChannel channel = file.getChannel()) {
+            return new Memory(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not map memory file " + path, e);
+        }
+    }
+
+    public int size() {
+        return view.capacity();
+    }
+
+    // Copies a whole cache block out of memory. Only absolute accesses are used, so
+    // cores sharing this Memory never race on the buffer position and a fill
+    // allocates nothing
+    public void readBlock(int address, byte[] dest, int offset, int length) {
+        if (array != null) {
+            System.arraycopy(array, address, dest, offset, length);
+            return;
+        }
+        checkRange(address, length);
+        for (int i = 0; i < length; i++) {
+            dest[offset + i] = view.get(address + i);
+        }
+    }
+
+    // Puts saved bytes back when stepping backwards; the store observer is not told
+    public void writeBlock(int address, byte[] src, int offset, int length) {
+        if (array != null) {
+            System.arraycopy(src, offset, array, address, length);
+            return;
+        }
+        checkRange(address, length);
+        for (int i = 0; i < length; i++) {
+            view.put(address + i, src[offset + i]);
+        }
+    }
+
+    // A block that does not fit fails before any byte is copied, like arraycopy does
+    private void checkRange(int address, int length) {
+        if (address < 0 || length < 0 || address > view.capacity() - length) {
+            throw new IndexOutOfBoundsException("Block " + address + "+" + length + " outside memory");
+        }
+    }
+
+    public void setStoreObserver(StoreObserver observer) {
+        this.storeObserver = observer;
+    }
 
     public int loadWord(int address) {
-        return ((mem[address] & 0xFF) << 24) |
-               ((mem[address+1] & 0xFF) << 16) |
-               ((mem[address+2] & 0xFF) <<   8) |
-               ((mem[address+3] & 0xFF));
+        return view.getInt(address);
     }
 
     public void storeWord(int address, int value) {
-        mem[address]   = (byte) ((value >> 24) & 0xFF);
-        mem[address+1] = (byte) ((value >> 16) & 0xFF);
-        mem[address+2] = (byte) ((value >> 8) & 0xFF);
-        mem[address+3] = (byte) (value & 0xFF);
+        if (storeObserver != null) storeObserver.beforeStore(address, 4);
+        view.putInt(address, value);
+    }
+
+    public long loadDoubleword(int address) {
+        return view.getLong(address);
+    }
+
+    public void storeDoubleword(int address, long value) {
+        if (storeObserver != null) storeObserver.beforeStore(address, 8);
+        view.putLong(address, value);
+    }
+
+    // IEEE-754 single and double precision, stored in the same byte order
+    public float loadFloat(int address) {
+        return view.getFloat(address);
+    }
+
+    public void storeFloat(int address, float value) {
+        if (storeObserver != null) storeObserver.beforeStore(address, 4);
+        view.putFloat(address, value);
+    }
+
+    public double loadDouble(int address) {
+        return view.getDouble(address);
+    }
+
+    public void storeDouble(int address, double value) {
+        if (storeObserver != null) storeObserver.beforeStore(address, 8);
+        view.putDouble(address, value);
     }
 }
@@ -0,0 +1,209 @@
+import java.util.*;
+
+public class MemoryController implements Undoable {
+    private static class Request {
+        int blockAddress;
+        int bank;
+        int row;
+        int arrivalCycle;
+        int completionCycle;
+    }
+
+    private int blockSize;
+    private int rowSize;
+    private int rowHitLatency;
+    private int rowMissLatency;
+    private int transferCycles;     // data bus cycles per block, i.e. the bandwidth cap
+    private boolean frfcfs;
+
+    private int[] openRow;
+    private int[] bankBusyUntil;
+    private int busFreeAt = 0;
+
+    private List<Request> queue = new ArrayList<>();
+    private List<Request> inService = new ArrayList<>();
+
+    // Statistics
+    public int requests = 0;
+    public int rowHits = 0;
+    public int rowMisses = 0;
+    public long totalQueueCycles = 0;
+    public int maxQueueLength = 0;
+    public int busWaitCycles = 0;
+
+    // Step-back history, told before anything here changes (null = none)
+    private SimulationHistory history;
+    private static final int BUS_FREE_AT = 0;
+    private static final int REQUESTS = 1;
+    private static final int ROW_HITS = 2;
+    private static final int ROW_MISSES = 3;
+    private static final int TOTAL_QUEUE_CYCLES = 4;
+    private static final int MAX_QUEUE_LENGTH = 5;
+    private static final int BUS_WAIT_CYCLES = 6;
+    private static final int OPEN_ROW = 7;
+    private static final int BANK_BUSY_UNTIL = 8;
+    private static final int QUEUES = 9;        // queued and in-service requests
+
+    public MemoryController(SimulatorConfig config) {
+        this.blockSize = config.blockSize;
+        this.rowSize = config.memRowSize;
+        this.rowHitLatency = config.memRowHitLatency;
+        this.rowMissLatency = config.memRowMissLatency;
+        this.transferCycles = Math.max(1, (config.blockSize + config.memBytesPerCycle - 1) / config.memBytesPerCycle);
+        this.frfcfs = "FR-FCFS".equals(config.memSchedPolicy);
+
+        openRow = new int[Math.max(1, config.memBanks)];
+        bankBusyUntil = new int[openRow.length];
+        Arrays.fill(openRow, -1);
+    }
+
+    public void enqueue(int blockAddress, int cycle) {
+        // Consecutive rows are interleaved across banks
+        int globalRow = (blockAddress * blockSize) / rowSize;
+        Request r = new Request();
+        r.blockAddress = blockAddress;
+        r.bank = globalRow % openRow.length;
+        r.row = globalRow / openRow.length;
+        r.arrivalCycle = cycle;
+        changingQueues();
+        queue.add(r);
+        saving(REQUESTS, 0, requests);
+        requests++;
+        if (queue.size() > maxQueueLength) {
+            saving(MAX_QUEUE_LENGTH, 0, maxQueueLength);
+            maxQueueLength = queue.size();
+        }
+    }
+
+    // Schedules one request per idle bank and returns the blocks whose data has arrived
+    public List<Integer> tick(int cycle) {
+        for (int bank = 0; bank < openRow.length; bank++) {
+            if (bankBusyUntil[bank] > cycle) continue;
+            Request next = pick(bank);
+            if (next == null) continue;
+            changingQueues();
+            queue.remove(next);
+
+            boolean rowHit = openRow[bank] == next.row;
+            if (rowHit) {
+                saving(ROW_HITS, 0, rowHits);
+                rowHits++;
+            } else {
+                saving(ROW_MISSES, 0, rowMisses);
+                rowMisses++;
+            }
+            saving(OPEN_ROW, bank, openRow[bank]);
+            openRow[bank] = next.row;
+
+            int dataReady = cycle + (rowHit ? rowHitLatency : rowMissLatency);
+            saving(BANK_BUSY_UNTIL, bank, bankBusyUntil[bank]);
+            bankBusyUntil[bank] = dataReady;
+
+            // The shared data bus moves one block per transferCycles
+            int transferStart = Math.max(dataReady, busFreeAt);
+            saving(BUS_WAIT_CYCLES, 0, busWaitCycles);
+            busWaitCycles += transferStart - dataReady;
+            saving(BUS_FREE_AT, 0, busFreeAt);
+            busFreeAt = transferStart + transferCycles;
+
+            next.completionCycle = busFreeAt;
+            saving(TOTAL_QUEUE_CYCLES, 0, totalQueueCycles);
+            totalQueueCycles += cycle - next.arrivalCycle;
+            inService.add(next);
+        }
+
+        List<Integer> done = new ArrayList<>();
+        Iterator<Request> it = inService.iterator();
+        while (it.hasNext()) {
+            Request r = it.next();
+            if (r.completionCycle <= cycle) {
+                changingQueues();
+                done.add(r.blockAddress);
+                it.remove();
+            }
+        }
+        return done;
+    }
+
+    // FCFS takes the oldest request for the bank; FR-FCFS prefers the oldest open-row hit
+    private Request pick(int bank) {
+        Request oldest = null;
+        for (Request r : queue) {
+            if (r.bank != bank) continue;
+            if (frfcfs && r.row == openRow[bank]) return r;
+            if (oldest == null) oldest = r;
+        }
+        return oldest;
+    }
+
+    public void setHistory(SimulationHistory history) {
+        this.history = history;
+    }
+
+    private void saving(int field, int index, long old) {
+        if (history != null) history.saveField(this, field, index, old);
+    }
+
+    // Saves both request lists before either changes; they only hold the fills in flight
+    private void changingQueues() {
+        if (history == null || !history.isRecording()) return;
+        int[] old = new int[2 + 5 * (queue.size() + inService.size())];
+        int k = 0;
+        for (List<Request> list : Arrays.asList(queue, inService)) {
+            old[k++] = list.size();
+            for (Request r : list) {
+                old[k++] = r.blockAddress;
+                old[k++] = r.bank;
+                old[k++] = r.row;
+                old[k++] = r.arrivalCycle;
+                old[k++] = r.completionCycle;
+            }
+        }
+        history.saveEntry(this, QUEUES, 0, old);
+    }
+
+    @Override
+    public void undoField(int field, int index, long old) {
+        int value = (int) old;
+        switch (field) {
+            case BUS_FREE_AT: busFreeAt = value; break;
+            case REQUESTS: requests = value; break;
+            case ROW_HITS: rowHits = value; break;
+            case ROW_MISSES: rowMisses = value; break;
+            case TOTAL_QUEUE_CYCLES: totalQueueCycles = old; break;
+            case MAX_QUEUE_LENGTH: maxQueueLength = value; break;
+            case BUS_WAIT_CYCLES: busWaitCycles = value; break;
+            case OPEN_ROW: openRow[index] = value; break;
+            case BANK_BUSY_UNTIL: bankBusyUntil[index] = value; break;
+            default: throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    @Override
+    public void undoEntry(int field, int index, int[] old) {
+        int k = 0;
+        for (List<Request> list : Arrays.asList(queue, inService)) {
+            list.clear();
+            for (int n = old[k++]; n > 0; n--) {
+                Request r = new Request();
+                r.blockAddress = old[k++];
+                r.bank = old[k++];
+                r.row = old[k++];
+                r.arrivalCycle = old[k++];
+                r.completionCycle = old[k++];
+                list.add(r);
+            }
+        }
+    }
+
+    public List<String> getStats() {
+        List<String> stats = new ArrayList<>();
+        int served = rowHits + rowMisses;
+        stats.add("Memory requests: " + requests + ", queued now: " + queue.size() + ", max queue: " + maxQueueLength);
+        stats.add(String.format("Row buffer hits: %d  misses: %d  (%.1f%%)", rowHits, rowMisses,
+                served == 0 ? 0.0 : 100.0 * rowHits / served));
+        stats.add(String.format("Avg queue delay: %.1f cycles, bus wait: %d cycles",
+                served == 0 ? 0.0 : (double) totalQueueCycles / served, busWaitCycles));
+        return stats;
+    }
+}
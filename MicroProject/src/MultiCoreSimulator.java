@@ -0,0 +1,186 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class MultiCoreSimulator {
+
+    public List<TomasuloSimulator> cores = new ArrayList<>();
+    public Memory memory;
+    public CoherenceBus bus;
+    public SimulatorConfig config;
+
+    public int clockCycle = 0;
+
+    private ExecutorService workers;
+
+    public MultiCoreSimulator(SimulatorConfig config) {
+        this.config = config;
+        memory = Memory.create(config);
+        bus = new CoherenceBus(config, memory);
+
+        for (int i = 0; i < config.numCores; i++) {
+            TomasuloSimulator core = new TomasuloSimulator(config, memory);
+            // L1 misses go over the coherence bus instead of a private memory model
+            core.cache.memoryController = null;
+            core.cache.bus = bus;
+            core.cache.coreId = bus.attach(core.cache);
+            cores.add(core);
+        }
+        // Daemon workers, so a caller that never calls shutdown() does not keep the JVM alive
+        workers = Executors.newFixedThreadPool(Math.max(1, config.numCores), r -> {
+            Thread t = new Thread(r, "core-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void loadProgram(int core, List<Instruction> instructions) {
+        cores.get(core).loadProgram(instructions);
+        clockCycle = 0;
+    }
+
+    // The image's data goes into the shared memory, so cores running the same
+    // program also share its data
+    public void loadProgram(int core, ProgramImage image) {
+        cores.get(core).loadProgram(image);
+        clockCycle = 0;
+    }
+
+    // Assembly source or program image, as the GUI's Load File accepts
+    public void loadFile(int core, File file) throws IOException {
+        if (ProgramImage.isImage(file)) {
+            loadProgram(core, ProgramImage.load(file, memory.size()));
+            return;
+        }
+        InstructionParser.Result parsed = InstructionParser.parseFile(file, memory.size());
+        if (parsed.hasErrors()) {
+            throw new IOException(file.getName() + ": " + parsed.errors.size() + " error(s)\n" 
+                                  + parsed.errorSummary(20));
+        }
+        loadProgram(core, parsed.toImage());
+    }
+
+    public boolean isDone() {
+        for (TomasuloSimulator core : cores) {
+            if (!core.isDone()) return false;
+        }
+        return true;
+    }
+
+    public void step() {
+        run(1);
+    }
+
+    // Advances every core by up to maxCycles, one worker thread per core. The phaser is
+    // the per-cycle barrier; bus traffic is resolved in onAdvance while all cores wait
+    public void run(final int maxCycles) {
+        if (maxCycles <= 0 || isDone()) return;
+
+        final Phaser barrier = new Phaser(cores.size()) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                clockCycle++;
+                bus.resolve(clockCycle);
+                return phase + 1 >= maxCycles || isDone();
+            }
+        };
+
+        List<Future<?>> running = new ArrayList<>();
+        for (final TomasuloSimulator core : cores) {
+            running.add(workers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        do {
+                            core.step();
+                        } while (barrier.arriveAndAwaitAdvance() >= 0);
+                    } catch (RuntimeException | Error e) {
+                        // Release the other cores waiting at the barrier for this one
+                        barrier.forceTermination();
+                        throw e;
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> f : running) {
+                f.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            barrier.forceTermination();
+            throw new RuntimeException("Core failed during simulation", e);
+        }
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    public List<String> getStats() {
+        List<String> stats = new ArrayList<>();
+        stats.add("Cores: " + cores.size() + ", cycles: " + clockCycle + ", protocol: " + config.coherenceProtocol);
+        for (int i = 0; i < cores.size(); i++) {
+            TomasuloSimulator core = cores.get(i);
+            stats.add("Core " + i + ": " + core.timeline.size() + " instructions issued, " 
+                      + core.cache.demandMisses + " demand misses" + (core.isDone() ? "" : ", not finished"));
+        }
+        stats.addAll(bus.getStats());
+        return stats;
+    }
+
+    // Runs programs on coherent cores and prints the statistics:
+    //   java MultiCoreSimulator [-cores N] [-protocol MSI|MESI] [-cycles max] program...
+    // Core i runs program i % count; without -cores there is one core per program
+    public static void main(String[] args) throws IOException {
+        SimulatorConfig config = new SimulatorConfig();
+        config.numCores = 0;
+        long maxCycles = 1_000_000;
+        List<File> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-cores":
+                        config.numCores = Integer.parseInt(args[++i]);
+                        break;
+                    case "-protocol":
+                        config.coherenceProtocol = args[++i].toUpperCase();
+                        break;
+                    case "-cycles":
+                        maxCycles = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        files.add(new File(args[i]));
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            files.clear();
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: java MultiCoreSimulator [-cores N] [-protocol MSI|MESI] [-cycles max] <program>...");
+            System.exit(2);
+        }
+        if (config.numCores <= 0) {
+            config.numCores = files.size();
+        }
+
+        MultiCoreSimulator sim = new MultiCoreSimulator(config);
+        try {
+            for (int core = 0; core < config.numCores; core++) {
+                sim.loadFile(core, files.get(core % files.size()));
+            }
+            while (!sim.isDone() && sim.clockCycle < maxCycles) {
+                sim.run((int) Math.min(Integer.MAX_VALUE, maxCycles - sim.clockCycle));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage().trim());
+            System.exit(1);
+        } finally {
+            sim.shutdown();
+        }
+        for (String line : sim.getStats()) {
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+import java.util.*;
+
+public class NextLinePrefetcher implements Prefetcher {
+    private int blockSize;
+    private int degree;      // blocks fetched per trigger
+    private int distance;    // how many blocks ahead the first prefetch is
+
+    public NextLinePrefetcher(int blockSize, int degree, int distance) {
+        this.blockSize = blockSize;
+        this.degree = degree;
+        this.distance = distance;
+    }
+
+    @Override
+    public List<Integer> onAccess(int pc, int address, boolean miss) {
+        List<Integer> targets = new ArrayList<>();
+        // Only misses trigger, otherwise every hit would re-request the same lines
+        if (!miss) return targets;
+
+        int blockStart = (address / blockSize) * blockSize;
+        for (int i = 0; i < degree; i++) {
+            targets.add(blockStart + (distance + i) * blockSize);
+        }
+        return targets;
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.BitSet;
+
+// Physical registers for renaming. Every instruction with a destination takes a free
+// register at issue and its consumers wait on that register's tag. An arithmetic
+// instruction leaves its reservation station as soon as it starts executing: its result
+// is computed then and carried here until write-back broadcasts it on the CDB and the
+// register goes back on the free list. So the instruction window is bounded by the
+// number of physical registers, not by the station count. Loads, stores and branches
+// still hold their station until write-back (replays, ordering, redirects)
+public class PhysicalRegisterFile implements Undoable {
+    private int size;
+    private int[] freeStack;
+    private int freeTop;     // number of entries on freeStack
+
+    // Instructions carried by their physical register, indexed by register number
+    public final double[] value;             // result, known from the start of execution
+    public final int[] dest;                 // architectural register it is written to
+    public final Instruction.OpCode[] op;
+    public final int[] issueSeq;
+    public final int[] station;              // station it left, for messages and the cycle delta
+    public final int[] completionCycle;      // execution ends at the end of this cycle
+    public final boolean[] completed;        // latency ran out; writes back the next cycle
+    public final BitSet executing = new BitSet();
+
+    // Cycles in which issue stalled because the free list was empty
+    public int renameStalls = 0;
+    
+    // Step-back history, told before anything here changes (null = none)
+    private SimulationHistory history;
+    private static final int RENAME_STALLS = 0;
+    private static final int FREE_TOP = 1;
+    private static final int FREE_STACK = 2;
+    private static final int CARRIED = 3;
+
+    public PhysicalRegisterFile(int size) {
+        this.size = size;
+        this.freeStack = new int[size];
+        // Lowest numbers on top, so the first allocations are P0, P1, ...
+        for (int i = 0; i < size; i++) {
+            freeStack[i] = size - 1 - i;
+        }
+        freeTop = size;
+        value = new double[size];
+        dest = new int[size];
+        op = new Instruction.OpCode[size];
+        issueSeq = new int[size];
+        station = new int[size];
+        completionCycle = new int[size];
+        completed = new boolean[size];
+    }
+
+    public boolean hasFree() {
+        return freeTop > 0;
+    }
+
+    // Takes a register off the free list, or -1 if none is free
+    public int allocate() {
+        if (freeTop == 0) return -1;
+        saving(FREE_TOP, 0, freeTop);
+        return freeStack[--freeTop];
+    }
+
+    public void free(int p) {
+        if (p >= 0) {
+            saving(FREE_STACK, freeTop, freeStack[freeTop]);
+            saving(FREE_TOP, 0, freeTop);
+            freeStack[freeTop++] = p;
+        }
+    }
+
+    public void countRenameStall() {
+        saving(RENAME_STALLS, 0, renameStalls);
+        renameStalls++;
+    }
+
+    // Write-back of an instruction carried by p is done
+    public void release(int p) {
+        changing(p);
+        executing.clear(p);
+        completed[p] = false;
+        op[p] = null;
+        free(p);
+    }
+
+    public int freeCount() {
+        return freeTop;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void setHistory(SimulationHistory history) {
+        this.history = history;
+    }
+
+    private void saving(int field, int index, long old) {
+        if (history != null) history.saveField(this, field, index, old);
+    }
+
+    // Called before the instruction carried by p changes; the history keeps all of it
+    public void changing(int p) {
+        if (history == null || !history.isRecording()) return;
+        long bits = Double.doubleToRawLongBits(value[p]);
+        history.saveEntry(this, CARRIED, p, new int[] {
+            (int) (bits >>> 32), (int) bits, dest[p], op[p] == null ? -1 : op[p].ordinal(), issueSeq[p],
+            station[p], completionCycle[p], completed[p] ? 1 : 0, executing.get(p) ? 1 : 0 });
+    }
+
+    @Override
+    public void undoField(int field, int index, long old) {
+        switch (field) {
+            case RENAME_STALLS: renameStalls = (int) old; break;
+            case FREE_TOP: freeTop = (int) old; break;
+            case FREE_STACK: freeStack[index] = (int) old; break;
+            default: throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    @Override
+    public void undoEntry(int field, int p, int[] old) {
+        value[p] = Double.longBitsToDouble(((long) old[0] << 32) | (old[1] & 0xFFFFFFFFL));
+        dest[p] = old[2];
+        op[p] = old[3] < 0 ? null : Instruction.OpCode.values()[old[3]];
+        issueSeq[p] = old[4];
+        station[p] = old[5];
+        completionCycle[p] = old[6];
+        completed[p] = old[7] != 0;
+        executing.set(p, old[8] != 0);
+    }
+
+    // Physical register names double as the tags broadcast on the CDB
+    public static String name(int p) {
+        return "P" + p;
+    }
+}
@@ -0,0 +1,10 @@
+import java.util.List;
+
+public interface Prefetcher {
+    // Called on every demand access; returns the byte addresses of blocks to prefetch
+    List<Integer> onAccess(int pc, int address, boolean miss);
+
+    // Step-back history to tell before training state changes; stateless prefetchers ignore it
+    default void setHistory(SimulationHistory history) {
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// A program as packed instruction words plus its data segment, and the compact binary
+// file it is saved in. Each instruction is one long:
+//   bits 63-56 opcode (OpCode ordinal), 55-48 dest, 47-40 src1, 39-32 src2, 31-0 immediate
+// Registers use RegisterFile ids (R0-R31 = 0-31, F0-F31 = 32-63), NO_REGISTER when unused.
+//
+// File layout, big-endian: magic, version, instruction count, data count (4 ints),
+// then code as longs, data addresses as ints, data widths as ints, data bits as longs.
+// Every section is a plain primitive array, so loading maps the file and bulk-copies
+// them without parsing anything
+public class ProgramImage {
+    public static final int MAGIC = 0x544D5049;     // "TMPI"
+    public static final int VERSION = 1;
+    public static final int NO_REGISTER = 0xFF;
+    private static final int HEADER_BYTES = 16;
+    private static final Instruction.OpCode[] OPCODES = Instruction.OpCode.values();
+
+    public final long[] code;
+    public final int[] dataAddress;
+    public final int[] dataWidth;    // 4 or 8 bytes
+    public final long[] dataBits;
+
+    public ProgramImage(long[] code, int[] dataAddress, int[] dataWidth, long[] dataBits) {
+        this.code = code;
+        this.dataAddress = dataAddress;
+        this.dataWidth = dataWidth;
+        this.dataBits = dataBits;
+    }
+
+    public static ProgramImage from(InstructionParser.Result parsed) {
+        long[] code = new long[parsed.instructions.size()];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = encode(parsed.instructions.get(i));
+        }
+        int n = parsed.data.size();
+        int[] address = new int[n];
+        int[] width = new int[n];
+        long[] bits = new long[n];
+        for (int i = 0; i < n; i++) {
+            InstructionParser.DataWord d = parsed.data.get(i);
+            address[i] = d.address;
+            width[i] = d.width;
+            bits[i] = d.bits;
+        }
+        return new ProgramImage(code, address, width, bits);
+    }
+
+    public int size() {
+        return code.length;
+    }
+
+    public List<Instruction> toInstructions() {
+        List<Instruction> list = new ArrayList<>(code.length);
+        for (long word : code) {
+            list.add(decode(word));
+        }
+        return list;
+    }
+
+    // Why the data segment does not fit a memory of memorySize bytes, or null if it does
+    public String checkData(int memorySize) {
+        for (int i = 0; i < dataAddress.length; i++) {
+            String problem = checkDataWord(dataAddress[i], dataWidth[i], memorySize);
+            if (problem != null) return problem;
+        }
+        return null;
+    }
+
+    // Data words must lie inside memory and be aligned to their width
+    public static String checkDataWord(int address, int width, int memorySize) {
+        if (width != 4 && width != 8) {
+            return "Invalid data width " + width + " at address " + address;
+        }
+        if (address < 0 || (long) address + width > memorySize) {
+            return width + "-byte data at address " + address + " is outside memory (" + memorySize + " bytes)";
+        }
+        if (address % width != 0) {
+            return width + "-byte data at address " + address + " is not aligned to " + width + " bytes";
+        }
+        return null;
+    }
+
+    public void writeData(Memory memory) {
+        for (int i = 0; i < dataAddress.length; i++) {
+            if (dataWidth[i] == 8) {
+                memory.storeDoubleword(dataAddress[i], dataBits[i]);
+            } else {
+                memory.storeWord(dataAddress[i], (int) dataBits[i]);
+            }
+        }
+    }
+
+    // -------------------------
+    // Instruction words
+    // -------------------------
+    public static long encode(Instruction inst) {
+        return ((long) inst.op.ordinal() << 56)
+             | ((long) field(RegisterFile.id(inst.dest)) << 48)
+             | ((long) field(RegisterFile.id(inst.src1)) << 40)
+             | ((long) field(RegisterFile.id(inst.src2)) << 32)
+             | (inst.immediate & 0xFFFFFFFFL);
+    }
+
+    public static Instruction decode(long word) {
+        return new Instruction(op(word), RegisterFile.name(dest(word)),
+                               RegisterFile.name(src1(word)), RegisterFile.name(src2(word)), immediate(word));
+    }
+
+    public static int opcode(long word) {
+        return (int) (word >>> 56) & 0xFF;
+    }
+
+    public static Instruction.OpCode op(long word) {
+        return OPCODES[opcode(word)];
+    }
+
+    // Register ids, -1 when the field is unused
+    public static int dest(long word) {
+        return register((int) (word >>> 48) & 0xFF);
+    }
+
+    public static int src1(long word) {
+        return register((int) (word >>> 40) & 0xFF);
+    }
+
+    public static int src2(long word) {
+        return register((int) (word >>> 32) & 0xFF);
+    }
+
+    public static int immediate(long word) {
+        return (int) word;
+    }
+
+    private static int field(int registerId) {
+        return registerId < 0 ? NO_REGISTER : registerId;
+    }
+
+    private static int register(int field) {
+        return field == NO_REGISTER ? -1 : field;
+    }
+
+    // -------------------------
+    // File format
+    // -------------------------
+    public void save(File file) throws IOException {
+        int n = code.length;
+        int m = dataAddress.length;
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + n * 8 + m * 16);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m);
+        buf.asLongBuffer().put(code);
+        buf.position(buf.position() + n * 8);
+        buf.asIntBuffer().put(dataAddress);
+        buf.position(buf.position() + m * 4);
+        buf.asIntBuffer().put(dataWidth);
+        buf.position(buf.position() + m * 4);
+        buf.asLongBuffer().put(dataBits);
+        buf.rewind();
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+        }
+    }
+
+    public static boolean isImage(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= HEADER_BYTES && in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Loads an image for a memory of memorySize bytes; data that would not fit is rejected
+    public static ProgramImage load(File file, int memorySize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES) {
+                throw new IOException(file.getName() + " is not a program image");
+            }
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buf.getInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a program image");
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException(file.getName() + " has image version " + version + ", expected " + VERSION);
+            }
+            int n = buf.getInt();
+            int m = buf.getInt();
+            if (n < 0 || m < 0 || length != HEADER_BYTES + (long) n * 8 + (long) m * 16) {
+                throw new IOException(file.getName() + " is truncated or corrupt");
+            }
+
+            long[] code = new long[n];
+            int[] address = new int[m];
+            int[] width = new int[m];
+            long[] bits = new long[m];
+            buf.asLongBuffer().get(code);
+            buf.position(buf.position() + n * 8);
+            buf.asIntBuffer().get(address);
+            buf.position(buf.position() + m * 4);
+            buf.asIntBuffer().get(width);
+            buf.position(buf.position() + m * 4);
+            buf.asLongBuffer().get(bits);
+
+            int opcodes = OPCODES.length;
+            for (int i = 0; i < n; i++) {
+                long w = code[i];
+                if (opcode(w) >= opcodes || dest(w) >= RegisterFile.COUNT || src1(w) >= RegisterFile.COUNT
+                        || src2(w) >= RegisterFile.COUNT) {
+                    throw new IOException(file.getName() + ": invalid instruction word at index " + i);
+                }
+            }
+            ProgramImage image = new ProgramImage(code, address, width, bits);
+            String problem = image.checkData(memorySize);
+            if (problem != null) {
+                throw new IOException(file.getName() + ": " + problem);
+            }
+            return image;
+        }
+    }
+
+    // Assembles a source file into an image: java ProgramImage program.s program.tpi
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java ProgramImage <source.s> <output.tpi>");
+            System.exit(2);
+        }
+        InstructionParser.Result parsed = InstructionParser.parseFile(new File(args[0]));
+        if (parsed.hasErrors()) {
+            System.err.print(parsed.errorSummary(Integer.MAX_VALUE));
+            System.exit(1);
+        }
+        ProgramImage image = from(parsed);
+        image.save(new File(args[1]));
+        System.out.println(args[1] + ": " + image.size() + " instructions, " + image.dataAddress.length + " data words");
+    }
+}
@@ -1,9 +1,12 @@
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class RegisterFile {
     public static class Register {
         public double value;  // Changed to double to support floating point
-        public String tag;
+        public String tag;    // rename table entry: pending physical register, or null
+        public int phys = -1; // the same physical register by number, -1 when tag is null
 
         public Register(double v) {
             value = v;
@@ -11,20 +14,90 @@ public class RegisterFile {
         }
     }
 
+    // Registers are numbered R0-R31 = 0-31 and F0-F31 = 32-63, -1 for none. The issue
+    // stage works on these ids; names are for the GUI and the parser
+    public static final int COUNT = 64;
+    private static final String[] NAMES = new String[COUNT];
+    static {
+        for (int i = 0; i < 32; i++) {
+            NAMES[i] = "R" + i;
+            NAMES[32 + i] = "F" + i;
+        }
+    }
+
     private HashMap<String, Register> registers = new HashMap<>();
+    private Register[] byId = new Register[COUNT];
+    
+    // Registers whose value or tag changed since the GUI last drained the set
+    private Set<String> dirty = new LinkedHashSet<>();
 
     public RegisterFile() {
         // Populate integer registers (R0-R31) - stored as doubles but used as integers
         for (int i = 0; i < 32; i++) {
-            registers.put("R" + i, new Register(0.0));
+            registers.put("R" + i, byId[i] = new Register(0.0));
         }
         // Populate floating point registers (F0-F31) - can hold actual floating point values
         for (int i = 0; i < 32; i++) {
-            registers.put("F" + i, new Register(0.0));
+            registers.put("F" + i, byId[32 + i] = new Register(0.0));
         }
     }
 
     public Register get(String name) {
         return registers.get(name);
     }
+
+    public Register get(int id) {
+        return byId[id];
+    }
+
+    public static int id(String name) {
+        if (name == null) return -1;
+        int n = Integer.parseInt(name.substring(1));
+        return name.charAt(0) == 'F' ? 32 + n : n;
+    }
+
+    public static String name(int id) {
+        return id < 0 ? null : NAMES[id];
+    }
+
+    public static boolean isFloat(int id) {
+        return id >= 32;
+    }
+
+    // Point an architectural register at the physical register that will produce its next value
+    public void rename(String name, int phys) {
+        Register r = registers.get(name);
+        if (r != null) {
+            r.tag = PhysicalRegisterFile.name(phys);
+            r.phys = phys;
+            dirty.add(name);
+        }
+    }
+
+    public void rename(int id, int phys) {
+        Register r = byId[id];
+        r.tag = PhysicalRegisterFile.name(phys);
+        r.phys = phys;
+        dirty.add(NAMES[id]);
+    }
+
+    // Puts back a value and mapping saved by the step-back history; the tag always
+    // names the mapped physical register
+    public void restore(int id, double value, int phys) {
+        Register r = byId[id];
+        r.value = value;
+        r.phys = phys;
+        r.tag = phys < 0 ? null : PhysicalRegisterFile.name(phys);
+        dirty.add(NAMES[id]);
+    }
+
+    public void markDirty(String name) {
+        dirty.add(name);
+    }
+
+    public Set<String> drainDirty() {
+        Set<String> changed = dirty;
+        dirty = new LinkedHashSet<>();
+        return changed;
+    }
 }
\ No newline at end of file
@@ -1,47 +1,51 @@
+// Lightweight view of one station in a StationPool; the state itself lives in the pool
 public class ReservationStation {
-    public String name;
-    public boolean busy;
-
-    // operation and operand fields (strings so GUI shows text)
-    public String op;         // e.g. "ADD.D"
-    public String Vj, Vk;     // operand values as strings
-    public String Qj, Qk;     // tags like "Add0", "Load1"
-    public int latencyRemaining;
-
- // bookkeeping
-    public Integer robIndex = -1;
-    public Integer effectiveAddress = null;
-    public String dest = null;        // destination register
-    public double result = 0.0;       // computed result
-    public boolean ready = false;     // ready to commit
-    
-    // For branches
-    public Integer pcAtIssue = null;
-    public Integer branchOffset = null;
-
-
-
-
-    // flag to ensure we only write-back after execution started
-    public boolean startedExecution = false;
-
-    public ReservationStation(String name) {
-        this.name = name;
-        clear();
-    }
-
-    public void clear() {
-        busy = false;
-        op = null;
-        Vj = null;
-        Vk = null;
-        Qj = null;
-        Qk = null;
-        latencyRemaining = 0;
-        dest = null;
-        effectiveAddress = null;
-        startedExecution = false;
-        result = 0.0;
-        ready = false;
+    public final String name;
+    public final int id;
+    private final StationPool pool;
+
+    public ReservationStation(StationPool pool, int id) {
+        this.pool = pool;
+        this.id = id;
+        this.name = pool.names[id];
+    }
+
+    public boolean isBusy() {
+        return pool.busy[id];
+    }
+
+    public Instruction.OpCode getOp() {
+        return pool.op[id];
+    }
+
+    public String getDest() {
+        return RegisterFile.name(pool.dest[id]);
+    }
+
+    // Operand values as text, or null while the operand is still being produced
+    public String getVj() {
+        return pool.operandText(id, true);
+    }
+
+    public String getVk() {
+        return pool.operandText(id, false);
+    }
+
+    // Tags of the physical registers the operands wait for, or null
+    public String getQj() {
+        return pool.busy[id] && pool.qj[id] >= 0 ? PhysicalRegisterFile.name(pool.qj[id]) : null;
+    }
+
+    public String getQk() {
+        return pool.busy[id] && pool.qk[id] >= 0 ? PhysicalRegisterFile.name(pool.qk[id]) : null;
+    }
+
+    public boolean isExecuting() {
+        return pool.startedExecution[id];
+    }
+
+    // Resolved address of a load/store, or null
+    public Integer getEffectiveAddress() {
+        return pool.busy[id] && pool.addressKnown[id] ? pool.effectiveAddress[id] : null;
     }
 }
@@ -0,0 +1,281 @@
+import java.util.*;
+
+// Bounded step-back history for one core, kept as an undo log. Whatever a step is about
+// to overwrite is recorded at the place it is written, so stepping back one cycle undoes
+// exactly that cycle, and both the time and the memory spent on history follow the
+// amount of change rather than the size of the core.
+//  - Memory and cache blocks tell the history before they change (StoreObserver,
+//    BlockObserver), and the simulator does the same for stations and registers; the
+//    first change to one of these in a cycle saves all of it.
+//  - The other parts (Undoable) save a single field or table entry before writing it,
+//    or a whole short list such as the MSHRs as ints.
+//  - State that follows from the rest (timing wheels, busy and ready masks, fill
+//    waiters) is not recorded; the simulator rebuilds it after undoing.
+public class SimulationHistory implements Memory.StoreObserver, Cache.BlockObserver {
+    private static class MemoryUndo {
+        final int address;
+        final byte[] old;     // bytes the store overwrote
+
+        MemoryUndo(int address, byte[] old) {
+            this.address = address;
+            this.old = old;
+        }
+    }
+
+    // Architectural register value and mapping before a step changed them
+    private static class RegisterUndo {
+        final int id;
+        final double value;
+        final int phys;
+
+        RegisterUndo(int id, double value, int phys) {
+            this.id = id;
+            this.value = value;
+            this.phys = phys;
+        }
+    }
+
+    // Everything one step changed, as it was before. Lists stay null when empty
+    private static class Step {
+        final int cycle;      // clock cycle before the step
+        List<StationPool.Slot> stations;
+        List<RegisterUndo> registers;
+        List<Cache.Block> blocks;
+        List<MemoryUndo> memory;
+
+        // Field and entry saves of the Undoable parts, oldest first. entries[i] is
+        // null for a field, otherwise the saved entry and old is unused
+        int fieldCount;
+        Undoable[] parts;
+        int[] fields;
+        int[] indexes;
+        long[] olds;
+        int[][] entries;
+
+        Step(int cycle) {
+            this.cycle = cycle;
+        }
+
+        void add(Undoable part, int field, int index, long old, int[] entry) {
+            if (parts == null) {
+                parts = new Undoable[8];
+                fields = new int[8];
+                indexes = new int[8];
+                olds = new long[8];
+                entries = new int[8][];
+            } else if (fieldCount == parts.length) {
+                int n = 2 * fieldCount;
+                parts = Arrays.copyOf(parts, n);
+                fields = Arrays.copyOf(fields, n);
+                indexes = Arrays.copyOf(indexes, n);
+                olds = Arrays.copyOf(olds, n);
+                entries = Arrays.copyOf(entries, n);
+            }
+            parts[fieldCount] = part;
+            fields[fieldCount] = field;
+            indexes[fieldCount] = index;
+            olds[fieldCount] = old;
+            entries[fieldCount] = entry;
+            fieldCount++;
+        }
+    }
+
+    private TomasuloSimulator sim;
+    private int window;             // cycles kept behind the current one
+    private ArrayDeque<Step> steps = new ArrayDeque<>();
+    private Step current;           // being recorded, between beforeStep and afterStep
+
+    // Stations, registers and blocks already saved by the current step
+    private BitSet savedStations = new BitSet();
+    private BitSet savedRegisters = new BitSet();
+    private BitSet savedBlocks = new BitSet();
+
+    // Entries held, by kind, for getStats
+    private int stationEntries, registerEntries, blockEntries, memoryEntries, fieldEntries;
+    private long bytes;
+
+    public SimulationHistory(TomasuloSimulator sim, int window) {
+        this.sim = sim;
+        this.window = window;
+        sim.memory.setStoreObserver(this);
+        sim.cache.setBlockObserver(this);
+        sim.cache.setHistory(this);
+        sim.physRegs.setHistory(this);
+        sim.timeline.setHistory(this);
+        if (sim.memDepPredictor != null) {
+            sim.memDepPredictor.setHistory(this);
+        }
+    }
+
+    // Forgets every step, e.g. after the GUI edited state that steps do not record
+    public void clear() {
+        while (!steps.isEmpty()) {
+            forget(steps.pollFirst());
+        }
+        current = null;
+    }
+
+    public void beforeStep() {
+        current = new Step(sim.clockCycle);
+    }
+
+    // Closes the step and drops steps that fell out of the window
+    public void afterStep() {
+        Step step = current;
+        current = null;
+        if (step == null) return;
+
+        // Only the bits this step set are cleared, whatever the number of stations or blocks
+        if (step.stations != null) {
+            for (StationPool.Slot slot : step.stations) savedStations.clear(slot.id);
+        }
+        if (step.registers != null) {
+            for (RegisterUndo r : step.registers) savedRegisters.clear(r.id);
+        }
+        if (step.blocks != null) {
+            for (Cache.Block b : step.blocks) savedBlocks.clear(b.index);
+        }
+
+        remember(step);
+        steps.addLast(step);
+        while (steps.size() > window) {
+            forget(steps.pollFirst());
+        }
+    }
+
+    @Override
+    public void beforeStore(int address, int length) {
+        if (current == null) return;
+        byte[] old = new byte[length];
+        sim.memory.readBlock(address, old, 0, length);
+        if (current.memory == null) current.memory = new ArrayList<>(2);
+        current.memory.add(new MemoryUndo(address, old));
+    }
+
+    @Override
+    public void beforeBlockChange(int index) {
+        if (current == null || savedBlocks.get(index)) return;
+        savedBlocks.set(index);
+        if (current.blocks == null) current.blocks = new ArrayList<>(2);
+        current.blocks.add(sim.cache.saveBlock(index));
+    }
+
+    public void beforeStationChange(int id) {
+        if (current == null || savedStations.get(id)) return;
+        savedStations.set(id);
+        if (current.stations == null) current.stations = new ArrayList<>(4);
+        current.stations.add(sim.stations.saveSlot(id));
+    }
+
+    public void beforeRegisterChange(int id) {
+        if (current == null || savedRegisters.get(id)) return;
+        savedRegisters.set(id);
+        RegisterFile.Register r = sim.registers.get(id);
+        if (current.registers == null) current.registers = new ArrayList<>(4);
+        current.registers.add(new RegisterUndo(id, r.value, r.phys));
+    }
+
+    // Called by a part before it overwrites field[index], which holds old
+    public void saveField(Undoable part, int field, int index, long old) {
+        if (current != null) current.add(part, field, index, old, null);
+    }
+
+    // Called by a part before it changes a table entry or short list, saved as ints
+    public void saveEntry(Undoable part, int field, int index, int[] old) {
+        if (current != null) current.add(part, field, index, 0, old);
+    }
+
+    // True while a step is being recorded, so parts can skip packing entries otherwise
+    public boolean isRecording() {
+        return current != null;
+    }
+
+    // Earliest cycle that can still be restored
+    public int oldestCycle() {
+        return steps.isEmpty() ? sim.clockCycle : steps.peekFirst().cycle;
+    }
+
+    // Undoes the newest step and returns the cycle it started from. The simulator
+    // sets its clock and rebuilds derived state once it has undone all it wants
+    public int undo() {
+        Step step = steps.pollLast();
+        if (step == null) {
+            throw new IllegalStateException("No history left to step back into");
+        }
+        forget(step);
+        if (step.memory != null) {
+            for (int i = step.memory.size() - 1; i >= 0; i--) {
+                MemoryUndo m = step.memory.get(i);
+                sim.memory.writeBlock(m.address, m.old, 0, m.old.length);
+            }
+        }
+        if (step.blocks != null) {
+            for (Cache.Block b : step.blocks) {
+                sim.cache.restoreBlock(b);
+            }
+        }
+        if (step.stations != null) {
+            for (StationPool.Slot slot : step.stations) {
+                sim.stations.restoreSlot(slot);
+            }
+        }
+        if (step.registers != null) {
+            for (RegisterUndo r : step.registers) {
+                sim.registers.restore(r.id, r.value, r.phys);
+            }
+        }
+        for (int i = step.fieldCount - 1; i >= 0; i--) {
+            if (step.entries[i] == null) {
+                step.parts[i].undoField(step.fields[i], step.indexes[i], step.olds[i]);
+            } else {
+                step.parts[i].undoEntry(step.fields[i], step.indexes[i], step.entries[i]);
+            }
+        }
+        return step.cycle;
+    }
+
+    public List<String> getStats() {
+        List<String> stats = new ArrayList<>();
+        stats.add("History: cycles " + oldestCycle() + "-" + sim.clockCycle + ", ~" + bytes / 1024 + " KB");
+        stats.add("Undo entries: " + stationEntries + " stations, " + registerEntries + " registers, "
+                + blockEntries + " cache blocks, " + memoryEntries + " memory, " + fieldEntries + " other");
+        return stats;
+    }
+
+    // Rough heap cost of a step, for the stats line
+    private static long sizeOf(Step step) {
+        long size = 48;
+        if (step.stations != null) size += step.stations.size() * 136L;
+        if (step.registers != null) size += step.registers.size() * 32L;
+        if (step.blocks != null) {
+            for (Cache.Block b : step.blocks) size += 48 + (b.data == null ? 0 : b.data.length);
+        }
+        if (step.memory != null) {
+            for (MemoryUndo m : step.memory) size += 40 + m.old.length;
+        }
+        if (step.parts != null) {
+            size += 32L * step.parts.length;
+            for (int i = 0; i < step.fieldCount; i++) {
+                if (step.entries[i] != null) size += 16 + 4L * step.entries[i].length;
+            }
+        }
+        return size;
+    }
+
+    private void remember(Step step) {
+        count(step, 1);
+    }
+
+    private void forget(Step step) {
+        count(step, -1);
+    }
+
+    private void count(Step step, int sign) {
+        if (step.stations != null) stationEntries += sign * step.stations.size();
+        if (step.registers != null) registerEntries += sign * step.registers.size();
+        if (step.blocks != null) blockEntries += sign * step.blocks.size();
+        if (step.memory != null) memoryEntries += sign * step.memory.size();
+        fieldEntries += sign * step.fieldCount;
+        bytes += sign * sizeOf(step);
+    }
+}
@@ -3,7 +3,11 @@ public class SimulatorConfig {
     public int fpAddStations = 3;
     public int fpMulStations = 2;
     public int loadBuffers = 3;
-    public int intStations = 2;
+    public int storeBuffers = 2;
+    public int intStations = 2;        // integer ALU and branch stations
+    
+    // Physical register tags available for renaming (at most this many results in flight)
+    public int physRegs = 32;
     
     // Instruction latencies
     public int addSubLatency = 2;
@@ -19,6 +23,50 @@ public class SimulatorConfig {
     public int blockSize = 16;         // bytes
     public int cacheHitLatency = 1;    // cycles
     public int cacheMissPenalty = 10;  // cycles
+    public int cachePorts = 0;         // accesses that can start per cycle (0 = no limit)
+    public int cacheBanks = 1;         // word-interleaved banks (1 = not banked)
+    public int bankConflictPenalty = 1; // extra cycles when a bank is already in use
+    
+    // Main memory contents: "heap" (byte array), "offheap" (direct buffer) or
+    // "mapped" (memoryFile mapped into the address space)
+    public String memoryBackend = "heap";
+    public int memorySize = 4096;          // bytes
+    public String memoryFile = "memory.bin";
+    
+    // Main memory timing: "fixed" charges cacheMissPenalty per miss, "dram" models
+    // banks, row buffers, a scheduled request queue and a data bus bandwidth cap
+    public String memoryModel = "fixed";
+    public int memBanks = 8;
+    public int memRowSize = 1024;          // bytes per row
+    public int memRowHitLatency = 6;       // cycles, row already open
+    public int memRowMissLatency = 14;     // cycles, precharge + activate + read
+    public int memBytesPerCycle = 8;       // data bus bandwidth
+    public String memSchedPolicy = "FR-FCFS"; // FCFS or FR-FCFS
+    
+    // Victim cache (0 entries = none)
+    public int victimEntries = 0;
+    public int victimHitLatency = 1;   // cycles on top of the cache hit latency
+    
+    // Miss handling and prefetching
+    public int mshrs = 4;                   // outstanding block fills
+    public String prefetcher = "none";      // none, nextline, stride or stream
+    public int prefetchDegree = 1;          // blocks prefetched per trigger
+    public int prefetchDistance = 1;        // how far ahead the first prefetch is
+    public int prefetchTableSize = 16;      // stride table entries / tracked streams
+    
+    // Memory dependence prediction (store sets), 0 disables speculative loads
+    public int storeSetSize = 64;
+    
+    // Step-back history: cycles kept behind the current one (0 = off). Recording costs
+    // time every cycle, so only the GUI, which offers Step Back, turns it on
+    public int historyCycles = 0;
+    
+    // Multi-core: private L1s kept coherent over a shared L2 and Memory
+    public int numCores = 1;
+    public String coherenceProtocol = "MESI";  // MSI or MESI
+    public int l2Size = 2048;                  // bytes, shared by all cores
+    public int l2HitLatency = 4;               // cycles
+    public int busLatency = 2;                 // upgrades and cache-to-cache transfers
     
     // ROB size
     public int robSize = 16;
@@ -0,0 +1,208 @@
+import java.util.Arrays;
+
+// Every reservation station's state, one primitive array per field indexed by
+// station id. Stations of one unit type have consecutive ids
+public class StationPool {
+    public final int size;
+    public final String[] names;
+    public final int[] unit;               // unit type, fixed at construction
+
+    public final boolean[] busy;
+    public final Instruction.OpCode[] op;
+    public final int[] dest;               // destination register id (see RegisterFile), -1 if none
+    public final int[] physDest;           // physical register the destination is renamed to
+
+    // Operands: a value, or the physical register that will produce it (-1 once known)
+    public final double[] vj, vk;
+    public final int[] qj, qk;
+    public final boolean[] vjFloat, vkFloat;   // show the value as FP rather than int
+
+    public final int[] latencyRemaining;
+    public final int[] completionCycle;    // cycle execution ends, -1 if not scheduled yet
+    public final boolean[] startedExecution;
+
+    // For loads/stores: address, program order and memory dependence prediction
+    public final boolean[] addressKnown;
+    public final int[] effectiveAddress;
+    public final int[] issueSeq;           // issue order, older instructions have smaller values
+    public final int[] offset;             // immediate added to the base register
+    public final int[] predictedStoreSeq;  // store this load is predicted to depend on
+    public final boolean[] speculative;    // load started ahead of an unresolved older store
+
+    // For branches
+    public final int[] pcAtIssue;
+    public final int[] branchOffset;
+
+    public StationPool(String[] names, int[] unit) {
+        this.size = names.length;
+        this.names = names;
+        this.unit = unit;
+        busy = new boolean[size];
+        op = new Instruction.OpCode[size];
+        dest = new int[size];
+        physDest = new int[size];
+        vj = new double[size];
+        vk = new double[size];
+        qj = new int[size];
+        qk = new int[size];
+        vjFloat = new boolean[size];
+        vkFloat = new boolean[size];
+        latencyRemaining = new int[size];
+        completionCycle = new int[size];
+        startedExecution = new boolean[size];
+        addressKnown = new boolean[size];
+        effectiveAddress = new int[size];
+        issueSeq = new int[size];
+        offset = new int[size];
+        predictedStoreSeq = new int[size];
+        speculative = new boolean[size];
+        pcAtIssue = new int[size];
+        branchOffset = new int[size];
+        clearAll();
+    }
+
+    public void clear(int s) {
+        busy[s] = false;
+        op[s] = null;
+        dest[s] = -1;
+        physDest[s] = -1;
+        vj[s] = 0;
+        vk[s] = 0;
+        qj[s] = -1;
+        qk[s] = -1;
+        vjFloat[s] = false;
+        vkFloat[s] = false;
+        latencyRemaining[s] = 0;
+        completionCycle[s] = -1;
+        startedExecution[s] = false;
+        addressKnown[s] = false;
+        effectiveAddress[s] = 0;
+        issueSeq[s] = -1;
+        offset[s] = 0;
+        predictedStoreSeq[s] = -1;
+        speculative[s] = false;
+        pcAtIssue[s] = 0;
+        branchOffset[s] = 0;
+    }
+
+    // Bulk reset, one fill per field
+    public void clearAll() {
+        Arrays.fill(busy, false);
+        Arrays.fill(op, null);
+        Arrays.fill(dest, -1);
+        Arrays.fill(physDest, -1);
+        Arrays.fill(vj, 0);
+        Arrays.fill(vk, 0);
+        Arrays.fill(qj, -1);
+        Arrays.fill(qk, -1);
+        Arrays.fill(vjFloat, false);
+        Arrays.fill(vkFloat, false);
+        Arrays.fill(latencyRemaining, 0);
+        Arrays.fill(completionCycle, -1);
+        Arrays.fill(startedExecution, false);
+        Arrays.fill(addressKnown, false);
+        Arrays.fill(effectiveAddress, 0);
+        Arrays.fill(issueSeq, -1);
+        Arrays.fill(offset, 0);
+        Arrays.fill(predictedStoreSeq, -1);
+        Arrays.fill(speculative, false);
+        Arrays.fill(pcAtIssue, 0);
+        Arrays.fill(branchOffset, 0);
+    }
+
+    // One station's fields at some point in time, kept by the step-back history.
+    // Never modified after saveSlot creates it
+    public static final class Slot {
+        final int id;
+        final boolean busy;
+        final Instruction.OpCode op;
+        final int dest, physDest;
+        final double vj, vk;
+        final int qj, qk;
+        final boolean vjFloat, vkFloat;
+        final int latencyRemaining, completionCycle;
+        final boolean startedExecution, addressKnown;
+        final int effectiveAddress, issueSeq, offset, predictedStoreSeq;
+        final boolean speculative;
+        final int pcAtIssue, branchOffset;
+
+        private Slot(StationPool p, int s) {
+            id = s;
+            busy = p.busy[s];
+            op = p.op[s];
+            dest = p.dest[s];
+            physDest = p.physDest[s];
+            vj = p.vj[s];
+            vk = p.vk[s];
+            qj = p.qj[s];
+            qk = p.qk[s];
+            vjFloat = p.vjFloat[s];
+            vkFloat = p.vkFloat[s];
+            latencyRemaining = p.latencyRemaining[s];
+            completionCycle = p.completionCycle[s];
+            startedExecution = p.startedExecution[s];
+            addressKnown = p.addressKnown[s];
+            effectiveAddress = p.effectiveAddress[s];
+            issueSeq = p.issueSeq[s];
+            offset = p.offset[s];
+            predictedStoreSeq = p.predictedStoreSeq[s];
+            speculative = p.speculative[s];
+            pcAtIssue = p.pcAtIssue[s];
+            branchOffset = p.branchOffset[s];
+        }
+    }
+
+    public Slot saveSlot(int s) {
+        return new Slot(this, s);
+    }
+
+    // Puts a saved station back in place. The arrays stay the same, so the
+    // ReservationStation views keep working
+    public void restoreSlot(Slot slot) {
+        int s = slot.id;
+        busy[s] = slot.busy;
+        op[s] = slot.op;
+        dest[s] = slot.dest;
+        physDest[s] = slot.physDest;
+        vj[s] = slot.vj;
+        vk[s] = slot.vk;
+        qj[s] = slot.qj;
+        qk[s] = slot.qk;
+        vjFloat[s] = slot.vjFloat;
+        vkFloat[s] = slot.vkFloat;
+        latencyRemaining[s] = slot.latencyRemaining;
+        completionCycle[s] = slot.completionCycle;
+        startedExecution[s] = slot.startedExecution;
+        addressKnown[s] = slot.addressKnown;
+        effectiveAddress[s] = slot.effectiveAddress;
+        issueSeq[s] = slot.issueSeq;
+        offset[s] = slot.offset;
+        predictedStoreSeq[s] = slot.predictedStoreSeq;
+        speculative[s] = slot.speculative;
+        pcAtIssue[s] = slot.pcAtIssue;
+        branchOffset[s] = slot.branchOffset;
+    }
+
+    // True if station slot.id still holds exactly what was saved. Values are compared
+    // bit for bit, so a NaN operand does not count as a change every cycle
+    public boolean matches(Slot slot) {
+        int s = slot.id;
+        return busy[s] == slot.busy && op[s] == slot.op && dest[s] == slot.dest && physDest[s] == slot.physDest
+            && Double.doubleToRawLongBits(vj[s]) == Double.doubleToRawLongBits(slot.vj)
+            && Double.doubleToRawLongBits(vk[s]) == Double.doubleToRawLongBits(slot.vk)
+            && qj[s] == slot.qj && qk[s] == slot.qk && vjFloat[s] == slot.vjFloat && vkFloat[s] == slot.vkFloat
+            && latencyRemaining[s] == slot.latencyRemaining && completionCycle[s] == slot.completionCycle
+            && startedExecution[s] == slot.startedExecution && addressKnown[s] == slot.addressKnown
+            && effectiveAddress[s] == slot.effectiveAddress && issueSeq[s] == slot.issueSeq
+            && offset[s] == slot.offset && predictedStoreSeq[s] == slot.predictedStoreSeq
+            && speculative[s] == slot.speculative && pcAtIssue[s] == slot.pcAtIssue
+            && branchOffset[s] == slot.branchOffset;
+    }
+
+    // Operand text as the GUI shows it: ints for integer values, null while waiting
+    public String operandText(int s, boolean j) {
+        if (!busy[s] || (j ? qj[s] : qk[s]) >= 0) return null;
+        double v = j ? vj[s] : vk[s];
+        return (j ? vjFloat[s] : vkFloat[s]) ? Double.toString(v) : Integer.toString((int) v);
+    }
+}
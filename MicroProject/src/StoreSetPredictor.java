@@ -0,0 +1,118 @@
+public class StoreSetPredictor implements Undoable {
+    // Store Set ID Table: indexed by instruction PC, holds a store set id or -1
+    private int[] ssit;
+    // Last Fetched Store Table: per store set, issue sequence of the youngest in-flight store or -1
+    private int[] lfst;
+    private int nextSetId = 0;
+
+    public int predictions = 0;
+    public int violations = 0;
+
+    // Step-back history, told before anything here changes (null = none)
+    private SimulationHistory history;
+    private static final int SSIT = 0;
+    private static final int LFST = 1;
+    private static final int NEXT_SET_ID = 2;
+    private static final int PREDICTIONS = 3;
+    private static final int VIOLATIONS = 4;
+
+    public StoreSetPredictor(int tableSize) {
+        ssit = new int[Math.max(1, tableSize)];
+        lfst = new int[Math.max(1, tableSize)];
+        clear();
+    }
+
+    private int index(int pc) {
+        return (pc / 4) % ssit.length;
+    }
+
+    // Called when a store issues: it becomes the last fetched store of its set
+    public void onStoreIssue(int pc, int seq) {
+        int set = ssit[index(pc)];
+        if (set >= 0) {
+            saving(LFST, set, lfst[set]);
+            lfst[set] = seq;
+        }
+    }
+
+    // Called when a store writes back: it is no longer in flight
+    public void onStoreComplete(int pc, int seq) {
+        int set = ssit[index(pc)];
+        if (set >= 0 && lfst[set] == seq) {
+            saving(LFST, set, lfst[set]);
+            lfst[set] = -1;
+        }
+    }
+
+    // Returns the issue sequence of the store a load at this PC should wait for, or -1
+    public int predictStore(int loadPc) {
+        int set = ssit[index(loadPc)];
+        if (set < 0 || lfst[set] < 0) return -1;
+        saving(PREDICTIONS, 0, predictions);
+        predictions++;
+        return lfst[set];
+    }
+
+    // Train on a memory order violation: put the load and the store in the same set
+    public void onViolation(int loadPc, int storePc) {
+        saving(VIOLATIONS, 0, violations);
+        violations++;
+        int li = index(loadPc);
+        int si = index(storePc);
+        int loadSet = ssit[li];
+        int storeSet = ssit[si];
+
+        if (loadSet < 0 && storeSet < 0) {
+            int set = nextSetId;
+            saving(NEXT_SET_ID, 0, nextSetId);
+            nextSetId = (nextSetId + 1) % lfst.length;
+            saving(LFST, set, lfst[set]);
+            lfst[set] = -1;
+            setEntry(li, set);
+            setEntry(si, set);
+        } else if (loadSet < 0) {
+            setEntry(li, storeSet);
+        } else if (storeSet < 0) {
+            setEntry(si, loadSet);
+        } else {
+            // Both already belong to sets: merge into the smaller id
+            int set = Math.min(loadSet, storeSet);
+            setEntry(li, set);
+            setEntry(si, set);
+        }
+    }
+
+    private void setEntry(int index, int set) {
+        saving(SSIT, index, ssit[index]);
+        ssit[index] = set;
+    }
+
+    public void setHistory(SimulationHistory history) {
+        this.history = history;
+    }
+
+    private void saving(int field, int index, int old) {
+        if (history != null) history.saveField(this, field, index, old);
+    }
+
+    @Override
+    public void undoField(int field, int index, long old) {
+        int value = (int) old;
+        switch (field) {
+            case SSIT: ssit[index] = value; break;
+            case LFST: lfst[index] = value; break;
+            case NEXT_SET_ID: nextSetId = value; break;
+            case PREDICTIONS: predictions = value; break;
+            case VIOLATIONS: violations = value; break;
+            default: throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < ssit.length; i++) {
+            ssit[i] = -1;
+            lfst[i] = -1;
+        }
+        nextSetId = 0;
+    }
+}
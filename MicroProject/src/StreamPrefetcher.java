@@ -0,0 +1,115 @@
+import java.util.*;
+
+public class StreamPrefetcher implements Prefetcher, Undoable {
+    // One tracked stream: the next block expected and the direction of the walk
+    private static class Stream {
+        boolean valid;
+        int nextBlock;
+        int direction;
+        int lastUse;
+    }
+
+    private Stream[] streams;
+    private int blockSize;
+    private int degree;
+    private int distance;
+    private int lastMissBlock = Integer.MIN_VALUE;
+    private int accesses = 0;
+
+    // Step-back history, told before anything here changes (null = none)
+    private SimulationHistory history;
+    private static final int LAST_MISS_BLOCK = 0;
+    private static final int ACCESSES = 1;
+    private static final int STREAM = 2;
+
+    public StreamPrefetcher(int blockSize, int streamCount, int degree, int distance) {
+        this.blockSize = blockSize;
+        this.streams = new Stream[Math.max(1, streamCount)];
+        for (int i = 0; i < streams.length; i++) {
+            streams[i] = new Stream();
+        }
+        this.degree = degree;
+        this.distance = distance;
+    }
+
+    @Override
+    public List<Integer> onAccess(int pc, int address, boolean miss) {
+        List<Integer> targets = new ArrayList<>();
+        int block = address / blockSize;
+        saving(ACCESSES, accesses);
+        accesses++;
+
+        // An access to the head of a stream advances it and prefetches further ahead
+        for (int i = 0; i < streams.length; i++) {
+            Stream s = streams[i];
+            if (s.valid && block == s.nextBlock) {
+                changing(i);
+                s.nextBlock += s.direction;
+                s.lastUse = accesses;
+                addTargets(targets, block, s.direction);
+                return targets;
+            }
+        }
+
+        // Two misses to adjacent blocks start a new stream in the LRU tracker
+        if (miss) {
+            int direction = block - lastMissBlock;
+            saving(LAST_MISS_BLOCK, lastMissBlock);
+            lastMissBlock = block;
+            if (direction == 1 || direction == -1) {
+                int v = 0;
+                for (int i = 0; i < streams.length; i++) {
+                    if (!streams[i].valid) { v = i; break; }
+                    if (streams[i].lastUse < streams[v].lastUse) v = i;
+                }
+                Stream victim = streams[v];
+                changing(v);
+                victim.valid = true;
+                victim.direction = direction;
+                victim.nextBlock = block + direction;
+                victim.lastUse = accesses;
+                addTargets(targets, block, direction);
+            }
+        }
+        return targets;
+    }
+
+    @Override
+    public void setHistory(SimulationHistory history) {
+        this.history = history;
+    }
+
+    private void saving(int field, int old) {
+        if (history != null) history.saveField(this, field, 0, old);
+    }
+
+    private void changing(int i) {
+        if (history == null || !history.isRecording()) return;
+        Stream s = streams[i];
+        history.saveEntry(this, STREAM, i, new int[] { s.valid ? 1 : 0, s.nextBlock, s.direction, s.lastUse });
+    }
+
+    @Override
+    public void undoField(int field, int index, long old) {
+        switch (field) {
+            case LAST_MISS_BLOCK: lastMissBlock = (int) old; break;
+            case ACCESSES: accesses = (int) old; break;
+            default: throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    @Override
+    public void undoEntry(int field, int i, int[] old) {
+        Stream s = streams[i];
+        s.valid = old[0] != 0;
+        s.nextBlock = old[1];
+        s.direction = old[2];
+        s.lastUse = old[3];
+    }
+
+    private void addTargets(List<Integer> targets, int block, int direction) {
+        for (int i = 0; i < degree; i++) {
+            targets.add((block + (distance + i) * direction) * blockSize);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.*;
+
+public class StridePrefetcher implements Prefetcher, Undoable {
+    // Reference prediction table entry, one per load/store PC
+    private static class Entry {
+        int pc = -1;
+        int lastAddress;
+        int stride;
+        int confidence;   // 2-bit saturating counter
+    }
+
+    private Entry[] table;
+    private int degree;
+    private int distance;
+
+    // Step-back history, told before an entry changes (null = none)
+    private SimulationHistory history;
+    private static final int ENTRY = 0;
+
+    public StridePrefetcher(int tableSize, int degree, int distance) {
+        this.table = new Entry[Math.max(1, tableSize)];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = new Entry();
+        }
+        this.degree = degree;
+        this.distance = distance;
+    }
+
+    @Override
+    public List<Integer> onAccess(int pc, int address, boolean miss) {
+        List<Integer> targets = new ArrayList<>();
+        int index = (pc / 4) % table.length;
+        Entry e = table[index];
+        if (history != null && history.isRecording()) {
+            history.saveEntry(this, ENTRY, index, new int[] { e.pc, e.lastAddress, e.stride, e.confidence });
+        }
+
+        if (e.pc != pc) {
+            // New PC takes over the entry
+            e.pc = pc;
+            e.lastAddress = address;
+            e.stride = 0;
+            e.confidence = 0;
+            return targets;
+        }
+
+        int stride = address - e.lastAddress;
+        if (stride == e.stride && stride != 0) {
+            e.confidence = Math.min(3, e.confidence + 1);
+        } else {
+            e.confidence = Math.max(0, e.confidence - 1);
+            if (e.confidence == 0) e.stride = stride;
+        }
+        e.lastAddress = address;
+
+        if (e.confidence >= 2) {
+            for (int i = 0; i < degree; i++) {
+                targets.add(address + (distance + i) * e.stride);
+            }
+        }
+        return targets;
+    }
+
+    @Override
+    public void setHistory(SimulationHistory history) {
+        this.history = history;
+    }
+
+    @Override
+    public void undoEntry(int field, int index, int[] old) {
+        Entry e = table[index];
+        e.pc = old[0];
+        e.lastAddress = old[1];
+        e.stride = old[2];
+        e.confidence = old[3];
+    }
+}
@@ -0,0 +1,170 @@
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+// Gantt chart of the instruction timeline: one row per dynamic instruction, one column
+// per cycle. The canvas is only as big as the viewport and the scroll bars pick which
+// rows and cycles are drawn, so the cost does not depend on the length of the run
+public class TimelineView extends BorderPane {
+    private static final double ROW_HEIGHT = 16;
+    private static final double CELL_WIDTH = 14;
+    private static final double LABEL_WIDTH = 200;
+    private static final double HEADER_HEIGHT = 18;
+
+    private static final Color ISSUE_COLOR = Color.web("#4a90d9");
+    private static final Color WAIT_COLOR = Color.web("#e0e0e0");
+    private static final Color EXEC_COLOR = Color.web("#5cb85c");
+    private static final Color WRITEBACK_COLOR = Color.web("#f0ad4e");
+    private static final Color GRID_COLOR = Color.web("#f0f0f0");
+
+    private Canvas canvas = new Canvas();
+    private ScrollBar rowBar = new ScrollBar();
+    private ScrollBar cycleBar = new ScrollBar();
+    private TomasuloSimulator sim;
+    private boolean updating = false;   // scroll bars being adjusted by update()
+
+    public TimelineView() {
+        Pane holder = new Pane(canvas);
+        holder.setMinSize(0, 0);
+        canvas.widthProperty().bind(holder.widthProperty());
+        canvas.heightProperty().bind(holder.heightProperty());
+        canvas.widthProperty().addListener((obs, o, n) -> redraw());
+        canvas.heightProperty().addListener((obs, o, n) -> redraw());
+
+        rowBar.setOrientation(Orientation.VERTICAL);
+        rowBar.valueProperty().addListener((obs, o, n) -> redraw());
+        cycleBar.valueProperty().addListener((obs, o, n) -> redraw());
+
+        // Wheel scrolls rows, shift+wheel scrolls cycles
+        canvas.setOnScroll(e -> {
+            ScrollBar bar = e.isShiftDown() ? cycleBar : rowBar;
+            double delta = e.isShiftDown() && e.getDeltaX() != 0 ? e.getDeltaX() : e.getDeltaY();
+            bar.setValue(clamp(bar.getValue() - Math.signum(delta) * 3, bar.getMax()));
+        });
+
+        setCenter(holder);
+        setRight(rowBar);
+        setBottom(cycleBar);
+        setPrefHeight(320);
+    }
+
+    // Called with the lock on sim held. Follows the newest rows and cycles while the
+    // scroll bars are at their end, so a running program stays in view
+    public void update(TomasuloSimulator sim) {
+        boolean followRows = this.sim != sim || rowBar.getValue() >= rowBar.getMax();
+        boolean followCycles = this.sim != sim || cycleBar.getValue() >= cycleBar.getMax();
+        this.sim = sim;
+
+        updating = true;
+        rowBar.setMax(Math.max(0, sim.timeline.size() - visibleRows()));
+        rowBar.setVisibleAmount(visibleRows());
+        cycleBar.setMax(Math.max(0, sim.clockCycle - visibleCycles() + 1));
+        cycleBar.setVisibleAmount(visibleCycles());
+        if (followRows) rowBar.setValue(rowBar.getMax());
+        if (followCycles) cycleBar.setValue(cycleBar.getMax());
+        updating = false;
+        draw();
+    }
+
+    // Redraws after scrolling or resizing, which happens outside refreshTables
+    private void redraw() {
+        if (sim == null || updating) return;
+        synchronized (sim) {
+            draw();
+        }
+    }
+
+    private int visibleRows() {
+        return Math.max(1, (int) ((canvas.getHeight() - HEADER_HEIGHT) / ROW_HEIGHT));
+    }
+
+    private int visibleCycles() {
+        return Math.max(1, (int) ((canvas.getWidth() - LABEL_WIDTH) / CELL_WIDTH));
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    private void draw() {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        g.clearRect(0, 0, width, height);
+        if (sim == null) return;
+
+        InstructionTimeline timeline = sim.timeline;
+        int firstRow = (int) rowBar.getValue();
+        int rows = Math.min(visibleRows(), timeline.size() - firstRow);
+        int firstCycle = (int) cycleBar.getValue() + 1;
+        int cycles = visibleCycles();
+        int lastCycle = firstCycle + cycles - 1;
+
+        g.setFont(Font.font("Monospaced", 11));
+        g.setTextBaseline(VPos.CENTER);
+
+        // Cycle header and column grid, labelled every 5 cycles
+        g.setTextAlign(TextAlignment.CENTER);
+        for (int c = firstCycle; c <= lastCycle; c++) {
+            double x = cycleX(c, firstCycle);
+            if (c % 5 == 0) {
+                g.setFill(GRID_COLOR);
+                g.fillRect(x, HEADER_HEIGHT, 1, height - HEADER_HEIGHT);
+                g.setFill(Color.GRAY);
+                g.fillText(Integer.toString(c), x + CELL_WIDTH / 2, HEADER_HEIGHT / 2);
+            }
+        }
+
+        for (int r = 0; r < rows; r++) {
+            int seq = firstRow + r;
+            double y = HEADER_HEIGHT + r * ROW_HEIGHT;
+
+            Instruction inst = sim.getProgramInstruction(timeline.getPc(seq));
+            g.setTextAlign(TextAlignment.LEFT);
+            g.setFill(Color.BLACK);
+            g.fillText(seq + "  " + (inst == null ? "?" : inst.toString()), 4, y + ROW_HEIGHT / 2, LABEL_WIDTH - 8);
+
+            int issue = timeline.getIssue(seq);
+            int start = timeline.getExecStart(seq);
+            int end = timeline.getExecEnd(seq);
+            int writeBack = timeline.getWriteBack(seq);
+            int now = sim.clockCycle;
+
+            // Waiting for operands or a port between issue and the start of execution
+            int waitEnd = start >= 0 ? start - 1 : (writeBack >= 0 ? writeBack - 1 : now);
+            fillSpan(g, issue + 1, waitEnd, firstCycle, lastCycle, y, WAIT_COLOR);
+            if (start >= 0) {
+                fillSpan(g, start, end >= 0 ? end : now, firstCycle, lastCycle, y, EXEC_COLOR);
+            }
+            fillSpan(g, issue, issue, firstCycle, lastCycle, y, ISSUE_COLOR);
+            if (writeBack >= 0) {
+                fillSpan(g, writeBack, writeBack, firstCycle, lastCycle, y, WRITEBACK_COLOR);
+            }
+        }
+
+        // Label column divider
+        g.setFill(Color.LIGHTGRAY);
+        g.fillRect(LABEL_WIDTH - 1, 0, 1, height);
+    }
+
+    private static double cycleX(int cycle, int firstCycle) {
+        return LABEL_WIDTH + (cycle - firstCycle) * CELL_WIDTH;
+    }
+
+    // Fills cycles from..to of a row, clipped to the visible columns
+    private static void fillSpan(GraphicsContext g, int from, int to, int firstCycle, int lastCycle,
+                                 double y, Color color) {
+        from = Math.max(from, firstCycle);
+        to = Math.min(to, lastCycle);
+        if (from > to) return;
+        g.setFill(color);
+        g.fillRect(cycleX(from, firstCycle), y + 2, (to - from + 1) * CELL_WIDTH - 1, ROW_HEIGHT - 4);
+    }
+}
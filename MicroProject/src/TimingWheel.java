@@ -0,0 +1,55 @@
+import java.util.*;
+
+// Hashed timing wheel: events are filed under cycle % size, so scheduling is O(1) and
+// advancing only looks at one bucket. Events further out than one turn stay in their
+// bucket until their cycle comes around.
+public class TimingWheel<T> {
+    private static class Event<T> {
+        int cycle;
+        T item;
+
+        Event(int cycle, T item) {
+            this.cycle = cycle;
+            this.item = item;
+        }
+    }
+
+    private List<List<Event<T>>> buckets = new ArrayList<>();
+    private int mask;
+
+    public TimingWheel(int minSize) {
+        int size = 1;
+        while (size < minSize) size <<= 1;
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<Event<T>>());
+        }
+    }
+
+    public void schedule(int cycle, T item) {
+        buckets.get(cycle & mask).add(new Event<T>(cycle, item));
+    }
+
+    // Removes and returns everything scheduled for this cycle
+    public List<T> advance(int cycle) {
+        List<Event<T>> bucket = buckets.get(cycle & mask);
+        if (bucket.isEmpty()) return Collections.emptyList();
+
+        List<T> due = new ArrayList<>();
+        Iterator<Event<T>> it = bucket.iterator();
+        while (it.hasNext()) {
+            Event<T> e = it.next();
+            if (e.cycle == cycle) {
+                due.add(e.item);
+                it.remove();
+            }
+        }
+        return due;
+    }
+
+    public void clear() {
+        for (List<Event<T>> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+}
@@ -1,149 +1,315 @@
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-public class TomasuloSimulator {
+public class TomasuloSimulator implements Undoable {
 
     public RegisterFile registers;
+    public PhysicalRegisterFile physRegs;
     public Cache cache;
     public Memory memory;
     public SimulatorConfig config;
 
     public List<ReservationStation> fpAddStations;
     public List<ReservationStation> fpMulStations;
+    public List<ReservationStation> intStations;
     public List<ReservationStation> loadBuffers;
     public List<ReservationStation> storeBuffers;
+    
+    // Unit types, in the order stations are scanned and shown
+    public static final int UNIT_ADD = 0;
+    public static final int UNIT_MUL = 1;
+    public static final int UNIT_INT = 2;
+    public static final int UNIT_LOAD = 3;
+    public static final int UNIT_STORE = 4;
+    private static final int UNIT_TYPES = 5;
+    
+    // Station state, one primitive array per field. Unit t owns the station ids
+    // unitStart[t] .. unitStart[t + 1] - 1; the lists above are views for the GUI
+    public StationPool stations;
+    private int[] unitStart = new int[UNIT_TYPES + 1];
+    private List<ReservationStation> allStations = new ArrayList<>();
+    
+    // Busy and ready-to-start masks, bit = station id. Kept up to date on issue,
+    // wakeup, start and write-back so select is a bit scan
+    private BitSet busyMask = new BitSet();
+    private BitSet readyMask = new BitSet();
+    private int[] finished;
+    
+    // Stations whose shown state changed since the GUI last drained the set. The
+    // latency countdown of executing stations is not tracked; it changes every cycle
+    private BitSet dirtyStations = new BitSet();
+    
+    // Per-opcode dispatch tables, filled from the config by buildOpTables()
+    private int[] opUnit = new int[Instruction.OpCode.values().length];
+    private int[] opLatency = new int[Instruction.OpCode.values().length];
 
-    public List<Instruction> instructionQueue = new ArrayList<>();
-    private List<Instruction> originalProgram = new ArrayList<>();
+    // The program as packed words (see ProgramImage); fetch reads code[pc / 4]
+    private long[] code = new long[0];
 
     public int clockCycle = 0;
     public int pc = 0;
     
-    // Track pending cache operations
-    private Map<ReservationStation, Integer> cachePendingCycles = new HashMap<>();
+    // Program order of issued instructions, used to order memory operations
+    private int issueSeq = 0;
     
-    // Cache miss notification callback
-    public interface CacheMissListener {
-        void onCacheMiss(int address);
-    }
-    private CacheMissListener cacheMissListener;
+    // Store-set memory dependence predictor (null = loads never bypass unresolved stores)
+    public StoreSetPredictor memDepPredictor;
+    public int speculativeLoads = 0;
+    public int loadReplays = 0;
+    
+    // Cache port and bank arbitration
+    private int portsUsedThisCycle = 0;
+    private int[] bankLastAccessCycle;
+    public int portStalls = 0;
+    public int bankConflicts = 0;
+    
+    // Completions are scheduled once, when execution starts, for the cycle they finish:
+    // by station, and by physical register for instructions that left their station
+    private TimingWheel<Integer> completions = new TimingWheel<>(64);
+    private TimingWheel<Integer> resultCompletions = new TimingWheel<>(64);
+    private int[] finishedResults;
     
-    // Address clash notification callback
-    public interface AddressClashListener {
-        void onAddressClash(String stationName, int address, String reason);
+    // Loads/stores whose block is still on its way, keyed by block address
+    private Map<Integer, List<Integer>> fillWaiters = new HashMap<>();
+    
+    // Issue, execute and write-back cycles of every instruction issued so far
+    public InstructionTimeline timeline = new InstructionTimeline();
+
+    // Step-back history, null when disabled in the config
+    public SimulationHistory history;
+    
+    // Fields saved in the history before they are written (see saving)
+    private static final int PC = 0;
+    private static final int ISSUE_SEQ = 1;
+    private static final int SPECULATIVE_LOADS = 2;
+    private static final int LOAD_REPLAYS = 3;
+    private static final int PORT_STALLS = 4;
+    private static final int BANK_CONFLICTS = 5;
+    private static final int BANK_LAST_ACCESS = 6;
+
+    // Observers get one CycleDelta at the end of every step. The delta is only
+    // collected while someone is subscribed
+    public interface CycleObserver {
+        void onCycle(CycleDelta delta);
     }
-    private AddressClashListener addressClashListener;
+    private List<CycleObserver> observers = new CopyOnWriteArrayList<>();
+    private CycleDelta.Builder delta;
 
     public TomasuloSimulator(SimulatorConfig config) {
+        this(config, Memory.create(config));
+        if (config.historyCycles > 0) {
+            history = new SimulationHistory(this, config.historyCycles);
+        }
+    }
+
+    // Cores of a multi-core system share one Memory. They keep no step-back history:
+    // bus traffic between cores cannot be undone one core at a time
+    public TomasuloSimulator(SimulatorConfig config, Memory memory) {
         this.config = config;
         registers = new RegisterFile();
-        memory = new Memory();
+        physRegs = new PhysicalRegisterFile(config.physRegs);
+        this.memory = memory;
         cache = new Cache(config.cacheSize, config.blockSize, memory);
-
-        fpAddStations = new ArrayList<>();
-        fpMulStations = new ArrayList<>();
-        loadBuffers = new ArrayList<>();
-        storeBuffers = new ArrayList<>();
+        cache.missPenalty = config.cacheMissPenalty;
+        cache.mshrs = config.mshrs;
+        if ("dram".equals(config.memoryModel)) {
+            cache.memoryController = new MemoryController(config);
+        }
+        cache.prefetcher = createPrefetcher(config);
+        if (config.victimEntries > 0) {
+            cache.victimCache = new VictimCache(config.victimEntries, config.blockSize);
+            cache.victimHitLatency = config.victimHitLatency;
+        }
+        bankLastAccessCycle = new int[Math.max(1, config.cacheBanks)];
+        buildOpTables();
+        if (config.storeSetSize > 0) {
+            memDepPredictor = new StoreSetPredictor(config.storeSetSize);
+        }
 
         // Create stations based on config
-        for (int i = 0; i < config.fpAddStations; i++) 
-            fpAddStations.add(new ReservationStation("Add" + i));
-        for (int i = 0; i < config.fpMulStations; i++) 
-            fpMulStations.add(new ReservationStation("Mul" + i));
-        for (int i = 0; i < config.loadBuffers; i++) 
-            loadBuffers.add(new ReservationStation("Load" + i));
-        for (int i = 0; i < config.intStations; i++) 
-            storeBuffers.add(new ReservationStation("Store" + i));
+        int[] counts = { config.fpAddStations, config.fpMulStations, config.intStations,
+                         config.loadBuffers, config.storeBuffers };
+        String[] prefixes = { "Add", "Mul", "Int", "Load", "Store" };
+        for (int t = 0; t < UNIT_TYPES; t++) {
+            unitStart[t + 1] = unitStart[t] + counts[t];
+        }
+        String[] names = new String[unitStart[UNIT_TYPES]];
+        int[] unitOf = new int[names.length];
+        for (int t = 0; t < UNIT_TYPES; t++) {
+            for (int i = 0; i < counts[t]; i++) {
+                names[unitStart[t] + i] = prefixes[t] + i;
+                unitOf[unitStart[t] + i] = t;
+            }
+        }
+        stations = new StationPool(names, unitOf);
+        finished = new int[stations.size];
+        finishedResults = new int[physRegs.size()];
+        for (int s = 0; s < stations.size; s++) {
+            allStations.add(new ReservationStation(stations, s));
+        }
+        
+        fpAddStations = unitViews(UNIT_ADD);
+        fpMulStations = unitViews(UNIT_MUL);
+        intStations = unitViews(UNIT_INT);
+        loadBuffers = unitViews(UNIT_LOAD);
+        storeBuffers = unitViews(UNIT_STORE);
     }
 
     public void loadProgram(List<Instruction> instructions) {
-        originalProgram = new ArrayList<>(instructions);
-        instructionQueue.clear();
-        instructionQueue.addAll(instructions);
+        long[] words = new long[instructions.size()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = ProgramImage.encode(instructions.get(i));
+        }
+        loadCode(words);
+    }
+    
+    // Stores the image's data segment into memory, then runs its code as is. Nothing is
+    // changed if the data does not fit this memory
+    public void loadProgram(ProgramImage image) {
+        String problem = image.checkData(memory.size());
+        if (problem != null) {
+            throw new IllegalArgumentException(problem);
+        }
+        image.writeData(memory);
+        loadCode(image.code);
+    }
+    
+    private void loadCode(long[] words) {
+        code = words;
         clockCycle = 0;
         pc = 0;
+        issueSeq = 0;
+        timeline.clear();
+        if (history != null) history.clear();
     }
     
-    public void setCacheMissListener(CacheMissListener listener) {
-        this.cacheMissListener = listener;
+    // Observers run on the simulation thread; wrap slow ones in an AsyncCycleObserver
+    public void subscribe(CycleObserver observer) {
+        observers.add(observer);
     }
     
-    public void setAddressClashListener(AddressClashListener listener) {
-        this.addressClashListener = listener;
+    public void unsubscribe(CycleObserver observer) {
+        observers.remove(observer);
+    }
+
+    // True once the program has been fully issued and every instruction has written back
+    public boolean isDone() {
+        return !hasNextInstruction() && busyMask.isEmpty() && physRegs.executing.isEmpty();
     }
 
     public void step() {
+        if (history != null) history.beforeStep();
         clockCycle++;
+        cache.clearTouched();
+        delta = observers.isEmpty() ? null : new CycleDelta.Builder(clockCycle);
         writeBack();
         execute();
         issue();
+        if (history != null) history.afterStep();
+        
+        if (delta != null) {
+            CycleDelta done = delta.build(cache.getFilledBlocks(), cache.getEvictedBlocks());
+            delta = null;
+            for (CycleObserver observer : observers) {
+                observer.onCycle(done);
+            }
+        }
     }
 
     // -------------------------
     // ISSUE
     // -------------------------
     private void issue() {
-        if (instructionQueue.isEmpty()) return;
+        if (!hasNextInstruction()) return;
 
-        Instruction inst = instructionQueue.get(0);
-        ReservationStation rs = findFreeStationFor(inst.op);
-        if (rs == null) {
+        // Decode straight from the packed word; no Instruction object on this path
+        long word = code[pc / 4];
+        Instruction.OpCode op = ProgramImage.op(word);
+        int destReg = ProgramImage.dest(word);
+        int src1 = ProgramImage.src1(word);
+        int src2 = ProgramImage.src2(word);
+        int immediate = ProgramImage.immediate(word);
+        int rs = findFreeStationFor(op);
+        if (rs < 0) {
+            if (delta != null) delta.stall(-1, CycleDelta.StallReason.NO_FREE_STATION, -1);
+            return;
+        }
+        
+        // Instructions with a destination need a free physical register
+        boolean renamesDest = !op.isStore && destReg >= 0;
+        if (renamesDest && !physRegs.hasFree()) {
+            physRegs.countRenameStall();
+            if (delta != null) delta.stall(-1, CycleDelta.StallReason.NO_FREE_PHYS_REG, -1);
             return;
         }
 
-        // Use RS name as tag
-        rs.busy = true;
-        rs.op = inst.op.toString();
-        rs.dest = inst.dest;
+        StationPool st = stations;
+        changing(rs);
+        st.busy[rs] = true;
+        busyMask.set(rs);
+        st.op[rs] = op;
+        st.dest[rs] = destReg;
 
-        switch (inst.op) {
+        switch (op) {
             case ADD_D: case ADD_S:
             case SUB_D: case SUB_S:
             case MUL_D: case MUL_S:
             case DIV_D: case DIV_S:
-                bindSourceToRS(rs, inst.src1, true);
-                bindSourceToRS(rs, inst.src2, false);
+                bindSourceToRS(rs, src1, true);
+                bindSourceToRS(rs, src2, false);
                 break;
 
             case DADDI: case DSUBI:
-                bindSourceToRS(rs, inst.src1, true);
-                rs.Vk = Integer.toString(inst.immediate);
-                rs.Qk = null;
+                bindSourceToRS(rs, src1, true);
+                bindImmediate(rs, immediate);
                 break;
 
             case LW: case LD: case L_S: case L_D:
-                bindSourceToRS(rs, inst.src1, true);
-                rs.Vk = Integer.toString(inst.immediate);
-                rs.Qk = null;
+                bindSourceToRS(rs, src1, true);
+                bindImmediate(rs, immediate);
+                st.offset[rs] = immediate;
+                if (memDepPredictor != null) {
+                    st.predictedStoreSeq[rs] = memDepPredictor.predictStore(pc);
+                }
                 break;
 
             case SW: case SD: case S_S: case S_D:
-                bindSourceToRS(rs, inst.dest, true);
-                bindSourceToRS(rs, inst.src1, false);
-                rs.effectiveAddress = inst.immediate;
+                bindSourceToRS(rs, destReg, true);
+                bindSourceToRS(rs, src1, false);
+                st.offset[rs] = immediate;
+                if (memDepPredictor != null) {
+                    memDepPredictor.onStoreIssue(pc, issueSeq);
+                }
                 break;
 
             case BEQ: case BNE:
-                bindSourceToRS(rs, inst.src1, true);
-                bindSourceToRS(rs, inst.src2, false);
-                rs.branchOffset = inst.immediate;
+                bindSourceToRS(rs, src1, true);
+                bindSourceToRS(rs, src2, false);
+                st.branchOffset[rs] = immediate;
                 break;
 
             default:
                 break;
         }
 
-        // Mark destination register as waiting on this RS
-        if (!isStore(inst.op) && inst.dest != null) {
-            RegisterFile.Register reg = registers.get(inst.dest);
-            if (reg != null) {
-                reg.tag = rs.name;
-            }
+        // Rename the destination: map it to a fresh physical register. Sources were
+        // bound first, so an instruction that reads its own destination sees the old mapping
+        if (renamesDest) {
+            st.physDest[rs] = physRegs.allocate();
+            changingRegister(destReg);
+            registers.rename(destReg, st.physDest[rs]);
         }
         
-        rs.pcAtIssue = pc;
+        st.pcAtIssue[rs] = pc;
+        saving(ISSUE_SEQ, 0, issueSeq);
+        st.issueSeq[rs] = issueSeq++;
+        timeline.onIssue(st.issueSeq[rs], pc, clockCycle);
+        if (delta != null) delta.issued(rs);
+        updateReady(rs);
+        dirtyStations.set(rs);
 
-        System.out.println("Issued to " + rs.name + " op=" + rs.op);
-        instructionQueue.remove(0);
+        System.out.println("Issued to " + st.names[rs] + " op=" + st.op[rs]);
+        saving(PC, 0, pc);
         pc += 4;
     }
 
@@ -151,369 +317,764 @@ public class TomasuloSimulator {
     // EXECUTE
     // -------------------------
     private void execute() {
-        List<ReservationStation> all = getAllStations();
+        portsUsedThisCycle = 0;
         
-        for (ReservationStation rs : all) {
-            if (!rs.busy) continue;
-
-            boolean readyJ = (rs.Qj == null);
-            boolean readyK = (rs.Qk == null);
-
-            if (rs.op != null && isLoadOpString(rs.op)) {
-                if (!readyJ) continue;
-                
-                // Address clash check for loads
-                if (!rs.startedExecution && rs.Qj == null) {
-                    int loadAddr = Integer.parseInt(rs.Vj == null ? "0" : rs.Vj) + 
-                                  Integer.parseInt(rs.Vk == null ? "0" : rs.Vk);
-                    if (hasAddressClash(rs, loadAddr)) {
-                        String reason = "Earlier store to same address not yet completed";
-                        System.out.println(rs.name + " stalled due to address clash at " + loadAddr);
-                        if (addressClashListener != null) {
-                            addressClashListener.onAddressClash(rs.name, loadAddr, reason);
-                        }
-                        continue;
-                    }
+        // Only stations whose block arrived or whose latency ends this cycle are touched
+        for (int blockAddress : cache.tick(clockCycle)) {
+            wakeFillWaiters(blockAddress);
+        }
+        StationPool st = stations;
+        // In station order, so the result does not depend on when each was scheduled.
+        // A station rescheduled for the same cycle after a replay only completes once
+        List<Integer> due = completions.advance(clockCycle);
+        if (due.size() > 1) Collections.sort(due);
+        for (int rs : due) {
+            if (st.busy[rs] && st.startedExecution[rs] && st.completionCycle[rs] == clockCycle
+                    && st.latencyRemaining[rs] > 0) {
+                changing(rs);
+                st.latencyRemaining[rs] = 0;
+                timeline.onExecEnd(st.issueSeq[rs], clockCycle);
+                if (delta != null) delta.completed(rs);
+            }
+        }
+        PhysicalRegisterFile pr = physRegs;
+        List<Integer> dueResults = resultCompletions.advance(clockCycle);
+        if (dueResults.size() > 1) Collections.sort(dueResults);
+        for (int p : dueResults) {
+            if (pr.executing.get(p) && !pr.completed[p] && pr.completionCycle[p] == clockCycle) {
+                pr.changing(p);
+                pr.completed[p] = true;
+                timeline.onExecEnd(pr.issueSeq[p], clockCycle);
+                if (delta != null) delta.completed(pr.station[p]);
+            }
+        }
+        
+        resolveAddresses();
+        
+        // Select: only stations whose operands are all available are visited
+        for (int rs = readyMask.nextSetBit(0); rs >= 0; rs = readyMask.nextSetBit(rs + 1)) {
+            tryStart(rs);
+        }
+    }
+    
+    private void tryStart(int rs) {
+        StationPool st = stations;
+        int unit = st.unit[rs];
+        if (unit == UNIT_LOAD) {
+            // Memory ordering check for loads
+            int store = findBlockingStore(rs);
+            if (store >= 0) {
+                if (st.addressKnown[store]) {
+                    System.out.println(st.names[rs] + " stalled due to address clash at " + st.effectiveAddress[rs]);
+                    if (delta != null) delta.stall(rs, CycleDelta.StallReason.ADDRESS_CLASH, st.effectiveAddress[rs]);
+                } else {
+                    if (delta != null) delta.stall(rs, CycleDelta.StallReason.PREDICTED_DEPENDENCE, st.effectiveAddress[rs]);
                 }
-            } else if (rs.op != null && isStoreOpString(rs.op)) {
-                if (!(readyJ && readyK)) continue;
-                
-                // Address clash check for stores
-                if (!rs.startedExecution) {
-                    int storeAddr = Integer.parseInt(rs.Vk == null ? "0" : rs.Vk) + 
-                                   (rs.effectiveAddress != null ? rs.effectiveAddress : 0);
-                    if (hasAddressClash(rs, storeAddr)) {
-                        String reason = "Earlier memory operation to same address not yet completed";
-                        System.out.println(rs.name + " stalled due to address clash at " + storeAddr);
-                        if (addressClashListener != null) {
-                            addressClashListener.onAddressClash(rs.name, storeAddr, reason);
-                        }
-                        continue;
-                    }
+                return;
+            }
+            
+            // Loads may bypass older stores whose address is still unknown
+            boolean speculative = hasUnresolvedOlderStore(rs);
+            if (st.speculative[rs] != speculative) {
+                changing(rs);
+                st.speculative[rs] = speculative;
+            }
+        } else if (unit == UNIT_STORE) {
+            // Address clash check for stores
+            int earlier = findBlockingMemoryOp(rs);
+            if (earlier >= 0) {
+                if (st.addressKnown[earlier]) {
+                    System.out.println(st.names[rs] + " stalled due to address clash at " + st.effectiveAddress[rs]);
+                    if (delta != null) delta.stall(rs, CycleDelta.StallReason.ADDRESS_CLASH, st.effectiveAddress[rs]);
+                } else {
+                    if (delta != null) delta.stall(rs, CycleDelta.StallReason.UNKNOWN_ADDRESS, st.effectiveAddress[rs]);
                 }
-            } else {
-                if (!readyJ || !readyK) continue;
-            }
-
-            // Handle cache access for loads/stores
-            if (isLoadOpString(rs.op) || isStoreOpString(rs.op)) {
-                if (cachePendingCycles.containsKey(rs)) {
-                    // Cache operation in progress
-                    int remaining = cachePendingCycles.get(rs);
-                    if (remaining > 1) {
-                        cachePendingCycles.put(rs, remaining - 1);
-                        continue;
-                    } else {
-                        // Cache operation complete
-                        cachePendingCycles.remove(rs);
-                        rs.latencyRemaining = 0;
-                    }
-                } else if (rs.latencyRemaining == 0 && !rs.startedExecution) {
-                    // Start cache access
-                    rs.startedExecution = true;
-                    
-                    // Compute address
-                    int address = 0;
-                    if (isLoadOpString(rs.op)) {
-                        int base = Integer.parseInt(rs.Vj == null ? "0" : rs.Vj);
-                        int offset = Integer.parseInt(rs.Vk == null ? "0" : rs.Vk);
-                        address = base + offset;
-                        rs.effectiveAddress = address;
-                    } else {
-                        int base = Integer.parseInt(rs.Vk == null ? "0" : rs.Vk);
-                        int offset = (rs.effectiveAddress != null) ? rs.effectiveAddress : 0;
-                        address = base + offset;
-                        rs.effectiveAddress = address;
-                    }
-                    
-                    // Check cache and set latency
-                    boolean hit = cache.isHit(address);
-                    int latency = hit ? config.cacheHitLatency : 
-                                       (config.cacheHitLatency + config.cacheMissPenalty);
-                    
-                    System.out.println(rs.name + " accessing address " + address + 
-                                     " - " + (hit ? "HIT" : "MISS") + 
-                                     " (latency=" + latency + ")");
-                    
-                    if (!hit && cacheMissListener != null) {
-                        cacheMissListener.onCacheMiss(address);
-                    }
-                    
-                    if (latency > 0) {
-                        cachePendingCycles.put(rs, latency);
-                    } else {
-                        rs.latencyRemaining = 0;
-                    }
+                return;
+            }
+        }
+
+        // Handle cache access for loads/stores
+        if (unit == UNIT_LOAD || unit == UNIT_STORE) {
+            // Address was computed once the base register became available
+            int address = st.effectiveAddress[rs];
+            
+            // A miss needs an MSHR for its fill; with all of them busy it tries again next cycle
+            if (cache.mshrsFull(address)) {
+                cache.countMshrStall();
+                if (delta != null) delta.stall(rs, CycleDelta.StallReason.MSHRS_FULL, address);
+                return;
+            }
+            
+            // Each access needs one of the cache ports for this cycle
+            if (config.cachePorts > 0 && portsUsedThisCycle >= config.cachePorts) {
+                saving(PORT_STALLS, 0, portStalls);
+                portStalls++;
+                if (delta != null) delta.stall(rs, CycleDelta.StallReason.CACHE_PORTS_BUSY, address);
+                return;
+            }
+            portsUsedThisCycle++;
+            
+            // Start cache access
+            changing(rs);
+            st.startedExecution[rs] = true;
+            timeline.onExecStart(st.issueSeq[rs], clockCycle);
+            if (delta != null) delta.started(rs);
+            readyMask.clear(rs);
+            dirtyStations.set(rs);
+            if (st.speculative[rs]) {
+                saving(SPECULATIVE_LOADS, 0, speculativeLoads);
+                speculativeLoads++;
+            }
+            
+            // Check cache and set latency (a miss may merge into a fill already in flight)
+            boolean hit = cache.isHit(address);
+            int latency = config.cacheHitLatency + cache.timedAccess(st.pcAtIssue[rs], address, clockCycle, 
+                                                                  unit == UNIT_STORE);
+            
+            // Words are interleaved across banks; a bank serves one access per cycle.
+            // Floor division keeps the bank in range for a negative address
+            if (bankLastAccessCycle.length > 1) {
+                int bank = Math.floorMod(address >> 2, bankLastAccessCycle.length);
+                if (bankLastAccessCycle[bank] == clockCycle) {
+                    saving(BANK_CONFLICTS, 0, bankConflicts);
+                    bankConflicts++;
+                    latency += config.bankConflictPenalty;
+                    if (delta != null) delta.stall(rs, CycleDelta.StallReason.BANK_CONFLICT, address);
                 }
-            } else {
-                // Non-memory operations
-                if (rs.latencyRemaining == 0) {
-                    rs.startedExecution = true;
-                    rs.latencyRemaining = latencyForOp(rs.op);
-                } else {
-                    rs.latencyRemaining = Math.max(0, rs.latencyRemaining - 1);
+                saving(BANK_LAST_ACCESS, bank, bankLastAccessCycle[bank]);
+                bankLastAccessCycle[bank] = clockCycle;
+            }
+            
+            System.out.println(st.names[rs] + " accessing address " + address + 
+                             " - " + (hit ? "HIT" : "MISS") + 
+                             " (latency=" + latency + 
+                             (cache.isFillPending(address) ? " after memory fill" : "") + ")");
+            
+            if (!hit && delta != null) {
+                delta.cacheMiss(address);
+            }
+            
+            if (cache.isFillPending(address)) {
+                // A miss first waits for its block; the hit latency counts from its arrival
+                st.latencyRemaining[rs] = Math.max(1, latency);
+                st.completionCycle[rs] = -1;
+                List<Integer> waiters = fillWaiters.get(address / config.blockSize);
+                if (waiters == null) {
+                    waiters = new ArrayList<>();
+                    fillWaiters.put(address / config.blockSize, waiters);
                 }
+                waiters.add(rs);
+            } else {
+                scheduleCompletion(rs, clockCycle + latency);
+            }
+        } else {
+            // Non-memory operations
+            changing(rs);
+            st.startedExecution[rs] = true;
+            timeline.onExecStart(st.issueSeq[rs], clockCycle);
+            if (delta != null) delta.started(rs);
+            readyMask.clear(rs);
+            dirtyStations.set(rs);
+            int cycle = clockCycle + opLatency[st.op[rs].ordinal()];
+            if (st.physDest[rs] >= 0) {
+                leaveStation(rs, cycle);
+            } else {
+                scheduleCompletion(rs, cycle);
             }
         }
     }
+    
+    // Once its operands are read, an instruction with a renamed destination needs nothing
+    // more from its station: the result is computed now and carried by the physical
+    // register until write-back, and the station takes the next instruction
+    private void leaveStation(int rs, int cycle) {
+        StationPool st = stations;
+        PhysicalRegisterFile pr = physRegs;
+        int p = st.physDest[rs];
+        changing(rs);
+        pr.changing(p);
+        pr.value[p] = compute(st.op[rs], st.vj[rs], st.vk[rs]);
+        pr.dest[p] = st.dest[rs];
+        pr.op[p] = st.op[rs];
+        pr.issueSeq[p] = st.issueSeq[rs];
+        pr.station[p] = rs;
+        pr.completionCycle[p] = cycle;
+        pr.executing.set(p);
+        if (cycle <= clockCycle) {
+            pr.completed[p] = true;
+            timeline.onExecEnd(pr.issueSeq[p], clockCycle);
+            if (delta != null) delta.completed(rs);
+        } else {
+            pr.completed[p] = false;
+            resultCompletions.schedule(cycle, p);
+        }
+        
+        st.clear(rs);
+        busyMask.clear(rs);
+        readyMask.clear(rs);
+    }
+    
+    // A station may start once it is busy, not yet executing, and has its operands.
+    // Loads only need the base register; Vk already holds their offset
+    private void updateReady(int rs) {
+        StationPool st = stations;
+        readyMask.set(rs, st.busy[rs] && !st.startedExecution[rs] && st.qj[rs] < 0 && st.qk[rs] < 0);
+    }
+    
+    // Next busy station of a unit at or after id from, or -1
+    private int nextBusy(int unit, int from) {
+        int rs = busyMask.nextSetBit(from);
+        return rs >= 0 && rs < unitStart[unit + 1] ? rs : -1;
+    }
+    
+    private List<ReservationStation> unitViews(int unit) {
+        return new ArrayList<>(allStations.subList(unitStart[unit], unitStart[unit + 1]));
+    }
+    
+    // Execution finishes at the end of the given cycle; write-back happens the cycle after
+    private void scheduleCompletion(int rs, int cycle) {
+        changing(rs);
+        stations.completionCycle[rs] = cycle;
+        if (cycle <= clockCycle) {
+            stations.latencyRemaining[rs] = 0;
+            timeline.onExecEnd(stations.issueSeq[rs], clockCycle);
+            if (delta != null) delta.completed(rs);
+        } else {
+            stations.latencyRemaining[rs] = cycle - clockCycle;
+            completions.schedule(cycle, rs);
+        }
+    }
+    
+    // The block arrived this cycle, which counts as the first cycle of the hit latency
+    private void wakeFillWaiters(int blockAddress) {
+        List<Integer> waiters = fillWaiters.remove(blockAddress);
+        if (waiters == null) return;
+        
+        StationPool st = stations;
+        for (int rs : waiters) {
+            // Skip stations that were replayed or reused since they started waiting
+            if (!st.busy[rs] || !st.startedExecution[rs] || st.completionCycle[rs] != -1) continue;
+            if (!st.addressKnown[rs] || st.effectiveAddress[rs] / config.blockSize != blockAddress) continue;
+            scheduleCompletion(rs, clockCycle + st.latencyRemaining[rs] - 1);
+        }
+    }
+    
+    // Cycles left until a station finishes executing, for display
+    public int getLatencyRemaining(ReservationStation view) {
+        int rs = view.id;
+        if (stations.startedExecution[rs] && stations.completionCycle[rs] > clockCycle) {
+            return stations.completionCycle[rs] - clockCycle;
+        }
+        return stations.latencyRemaining[rs];
+    }
 
     // -------------------------
     // WRITE BACK (includes commit logic)
     // -------------------------
     private void writeBack() {
-        List<ReservationStation> all = getAllStations();
-        List<ReservationStation> finished = new ArrayList<>();
+        StationPool st = stations;
+        PhysicalRegisterFile pr = physRegs;
+        int count = 0;
         
-        for (ReservationStation rs : all) {
-            if (!rs.busy) continue;
-            if (rs.latencyRemaining > 0) continue;
-            if (!rs.startedExecution) continue;
-            if (cachePendingCycles.containsKey(rs)) continue;
-            finished.add(rs);
+        for (int rs = busyMask.nextSetBit(0); rs >= 0; rs = busyMask.nextSetBit(rs + 1)) {
+            if (st.latencyRemaining[rs] > 0) continue;
+            if (!st.startedExecution[rs]) continue;
+            // A speculative load retires only once every older store address is known
+            if (st.speculative[rs]) {
+                if (hasUnresolvedOlderStore(rs)) continue;
+                changing(rs);
+                st.speculative[rs] = false;
+            }
+            finished[count++] = rs;
+        }
+        int results = 0;
+        for (int p = pr.executing.nextSetBit(0); p >= 0; p = pr.executing.nextSetBit(p + 1)) {
+            if (pr.completed[p]) finishedResults[results++] = p;
         }
 
         // Handle multiple writebacks: prioritize first in list
-        for (ReservationStation rs : finished) {
-            System.out.println("WriteBack from " + rs.name + " op=" + rs.op);
+        for (int f = 0; f < count; f++) {
+            int rs = finished[f];
+            changing(rs);
+            System.out.println("WriteBack from " + st.names[rs] + " op=" + st.op[rs]);
+            timeline.onWriteBack(st.issueSeq[rs], clockCycle);
+            if (delta != null) delta.broadcast(rs);
 
             double result = 0.0;
             boolean isBranch = false;
+            double vj = st.vj[rs];
+            double vk = st.vk[rs];
             
             try {
-                switch (rs.op) {
-                    case "ADD.D": case "ADD.S":
-                        result = Double.parseDouble(rs.Vj == null ? "0" : rs.Vj) + 
-                                Double.parseDouble(rs.Vk == null ? "0" : rs.Vk);
+                switch (st.op[rs]) {
+                    case LW:
+                        result = cache.loadWord(st.effectiveAddress[rs]);
                         break;
-                    case "SUB.D": case "SUB.S":
-                        result = Double.parseDouble(rs.Vj == null ? "0" : rs.Vj) - 
-                                Double.parseDouble(rs.Vk == null ? "0" : rs.Vk);
+                    case LD:
+                        result = cache.loadDoubleword(st.effectiveAddress[rs]);
                         break;
-                    case "MUL.D": case "MUL.S":
-                        result = Double.parseDouble(rs.Vj == null ? "0" : rs.Vj) * 
-                                Double.parseDouble(rs.Vk == null ? "0" : rs.Vk);
+                    case L_S:
+                        result = cache.loadFloat(st.effectiveAddress[rs]);
                         break;
-                    case "DIV.D": case "DIV.S":
-                        double denom = Double.parseDouble(rs.Vk == null ? "1" : rs.Vk);
-                        result = denom == 0 ? 0 : 
-                                Double.parseDouble(rs.Vj == null ? "0" : rs.Vj) / denom;
+                    case L_D:
+                        result = cache.loadDouble(st.effectiveAddress[rs]);
                         break;
-                    case "DADDI":
-                        result = (int)Double.parseDouble(rs.Vj == null ? "0" : rs.Vj) + 
-                                (int)Double.parseDouble(rs.Vk == null ? "0" : rs.Vk);
-                        break;
-                    case "DSUBI":
-                        result = (int)Double.parseDouble(rs.Vj == null ? "0" : rs.Vj) - 
-                                (int)Double.parseDouble(rs.Vk == null ? "0" : rs.Vk);
-                        break;
-                    case "LW": case "LD": case "L.S": case "L.D":
-                        result = cache.loadWord(rs.effectiveAddress);
-                        break;
-                    case "SW": case "SD": case "S.S": case "S.D":
-                        int storeValue = (int)Double.parseDouble(rs.Vj == null ? "0" : rs.Vj);
-                        cache.storeWord(rs.effectiveAddress, storeValue);
+                    case SW: case SD: case S_S: case S_D:
+                        if (st.op[rs] == Instruction.OpCode.SW) {
+                            cache.storeWord(st.effectiveAddress[rs], (int)vj);
+                        } else if (st.op[rs] == Instruction.OpCode.SD) {
+                            cache.storeDoubleword(st.effectiveAddress[rs], (long)vj);
+                        } else if (st.op[rs] == Instruction.OpCode.S_S) {
+                            cache.storeFloat(st.effectiveAddress[rs], (float)vj);
+                        } else {
+                            cache.storeDouble(st.effectiveAddress[rs], vj);
+                        }
+                        if (memDepPredictor != null) {
+                            memDepPredictor.onStoreComplete(st.pcAtIssue[rs], st.issueSeq[rs]);
+                        }
                         break;
-                    case "BNE":
+                    case BNE:
                         isBranch = true;
-                        if (rs.Vj != null && rs.Vk != null) {
-                            if (Double.parseDouble(rs.Vj) != Double.parseDouble(rs.Vk)) {
-                                int targetPC = rs.pcAtIssue + 4 + (rs.branchOffset * 4);
-                                pc = targetPC;
-                                instructionQueue.clear();
-                                
-                                // Reload instructions from the target PC
-                                int instructionIndex = targetPC / 4;
-                                for (int i = instructionIndex; i < originalProgram.size(); i++) {
-                                    instructionQueue.add(originalProgram.get(i));
-                                }
-                                
-                                System.out.println("Branch taken to PC=" + targetPC + 
-                                                 ", reloaded " + instructionQueue.size() + " instructions");
-                            } else {
-                                System.out.println("Branch not taken (R1 == R2)");
-                            }
+                        if (vj != vk) {
+                            takeBranch(rs);
+                        } else {
+                            System.out.println("Branch not taken (R1 == R2)");
                         }
                         break;
-                    case "BEQ":
+                    case BEQ:
                         isBranch = true;
-                        if (rs.Vj != null && rs.Vk != null) {
-                            if (Double.parseDouble(rs.Vj) == Double.parseDouble(rs.Vk)) {
-                                int targetPC = rs.pcAtIssue + 4 + (rs.branchOffset * 4);
-                                pc = targetPC;
-                                instructionQueue.clear();
-                                
-                                // Reload instructions from the target PC
-                                int instructionIndex = targetPC / 4;
-                                for (int i = instructionIndex; i < originalProgram.size(); i++) {
-                                    instructionQueue.add(originalProgram.get(i));
-                                }
-                                
-                                System.out.println("Branch taken to PC=" + targetPC + 
-                                                 ", reloaded " + instructionQueue.size() + " instructions");
-                            } else {
-                                System.out.println("Branch not taken (R1 != R2)");
-                            }
+                        if (vj == vk) {
+                            takeBranch(rs);
+                        } else {
+                            System.out.println("Branch not taken (R1 != R2)");
                         }
                         break;
                     default:
-                        result = 0;
+                        result = compute(st.op[rs], vj, vk);
                 }
             } catch (Exception ex) {
                 result = 0;
             }
 
-            // Broadcast result using RS name as tag
-            String tag = rs.name;
-            boolean isFP = rs.op.contains(".D") || rs.op.contains(".S");
-
-            for (ReservationStation other : all) {
-                if (!other.busy) continue;
-                if (tag.equals(other.Qj)) {
-                	if (isFP) {
-                		other.Vj = Double.toString(result);
-                	}
-                	else{
-                		other.Vj = Integer.toString((int)result);
-                	}
-                    other.Qj = null;
-                }
-                if (tag.equals(other.Qk)) {
-                	if (isFP) {
-                		other.Vk = Double.toString(result);
-                	}
-                	else{
-                		other.Vk = Integer.toString((int)result);
-                	}                    
-                	other.Qk = null;
-                }
+            // Broadcast result using the physical register as tag
+            int tag = st.physDest[rs];
+            if (!isBranch && tag >= 0) {
+                broadcast(tag, st.dest[rs], st.op[rs].isFloat, result);
+                // Every waiting consumer has captured the value, so the register can be reused
+                physRegs.free(tag);
             }
             
-            // Write result to register file immediately (no ROB, no speculation)
-            if (!isBranch && rs.dest != null && !rs.dest.isEmpty()) {
-                RegisterFile.Register reg = registers.get(rs.dest);
-                if (reg != null && rs.name.equals(reg.tag)) {
-                    // Enforce type: F registers get double, R registers get int
-                    if (rs.dest.startsWith("F")) {
-                        reg.value = result;
-                    } else if (rs.dest.startsWith("R")) {
-                        reg.value = (int)result;
-                    }
-                    reg.tag = null;
-                    System.out.println("Result written to " + rs.dest + " = " + reg.value);
+            // Clear the RS
+            st.clear(rs);
+            busyMask.clear(rs);
+            readyMask.clear(rs);
+            dirtyStations.set(rs);
+        }
+        
+        // Instructions that left their station carry the result in their physical register
+        for (int f = 0; f < results; f++) {
+            int p = finishedResults[f];
+            System.out.println("WriteBack from " + st.names[pr.station[p]] + " op=" + pr.op[p] 
+                               + " (via " + PhysicalRegisterFile.name(p) + ")");
+            timeline.onWriteBack(pr.issueSeq[p], clockCycle);
+            if (delta != null) delta.broadcast(pr.station[p]);
+            broadcast(p, pr.dest[p], pr.op[p].isFloat, pr.value[p]);
+            pr.release(p);
+        }
+    }
+    
+    // Result of an arithmetic instruction; memory operations and branches are handled
+    // by write-back itself
+    private static double compute(Instruction.OpCode op, double vj, double vk) {
+        switch (op) {
+            case ADD_D: case ADD_S:
+                return vj + vk;
+            case SUB_D: case SUB_S:
+                return vj - vk;
+            case MUL_D: case MUL_S:
+                return vj * vk;
+            case DIV_D: case DIV_S:
+                return vk == 0 ? 0 : vj / vk;
+            case DADDI:
+                return (int)vj + (int)vk;
+            case DSUBI:
+                return (int)vj - (int)vk;
+            default:
+                return 0;
+        }
+    }
+    
+    // Puts a result on the CDB: stations waiting on the tag capture it, and the
+    // destination register takes it if it is still mapped to this tag
+    private void broadcast(int tag, int destReg, boolean isFP, double result) {
+        StationPool st = stations;
+        double value = isFP ? result : (int)result;
+
+        for (int other = busyMask.nextSetBit(0); other >= 0; other = busyMask.nextSetBit(other + 1)) {
+            if (st.qj[other] != tag && st.qk[other] != tag) continue;
+            changing(other);
+            if (st.qj[other] == tag) {
+                st.vj[other] = value;
+                st.vjFloat[other] = isFP;
+                st.qj[other] = -1;
+            }
+            if (st.qk[other] == tag) {
+                st.vk[other] = value;
+                st.vkFloat[other] = isFP;
+                st.qk[other] = -1;
+            }
+            updateReady(other);
+            dirtyStations.set(other);
+        }
+        
+        // Write result to register file immediately (no ROB, no speculation).
+        // Only the latest mapping of the architectural register updates it (WAW)
+        RegisterFile.Register reg = registers.get(destReg);
+        if (reg.phys == tag) {
+            changingRegister(destReg);
+            // Enforce type: F registers get double, R registers get int
+            reg.value = RegisterFile.isFloat(destReg) ? result : (int)result;
+            reg.tag = null;
+            reg.phys = -1;
+            String dest = RegisterFile.name(destReg);
+            registers.markDirty(dest);
+            if (delta != null) delta.registerWrite(dest, reg.value);
+            System.out.println("Result written to " + dest + " = " + reg.value);
+        }
+    }
+    
+    // Redirects fetch to the branch target
+    private void takeBranch(int rs) {
+        int targetPC = stations.pcAtIssue[rs] + 4 + (stations.branchOffset[rs] * 4);
+        saving(PC, 0, pc);
+        pc = targetPC;
+        
+        System.out.println("Branch taken to PC=" + targetPC + 
+                         ", reloaded " + getRemainingInstructions() + " instructions");
+    }
+
+    // -------------------------
+    // Time travel
+    // -------------------------
+    // Tell the history what is about to change, so it can keep the old state
+    private void changing(int rs) {
+        if (history != null) history.beforeStationChange(rs);
+    }
+    
+    private void changingRegister(int id) {
+        if (history != null) history.beforeRegisterChange(id);
+    }
+    
+    private void saving(int field, int index, long old) {
+        if (history != null) history.saveField(this, field, index, old);
+    }
+    
+    @Override
+    public void undoField(int field, int index, long old) {
+        int value = (int) old;
+        switch (field) {
+            case PC: pc = value; break;
+            case ISSUE_SEQ: issueSeq = value; break;
+            case SPECULATIVE_LOADS: speculativeLoads = value; break;
+            case LOAD_REPLAYS: loadReplays = value; break;
+            case PORT_STALLS: portStalls = value; break;
+            case BANK_CONFLICTS: bankConflicts = value; break;
+            case BANK_LAST_ACCESS: bankLastAccessCycle[index] = value; break;
+            default: throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    // Called once the history has undone everything back to cycle. Pending completions,
+    // the busy and ready masks and the fill waiters all follow from the stations and
+    // carried results, so they are rebuilt rather than recorded
+    private void resumeAt(int cycle) {
+        clockCycle = cycle;
+        StationPool st = stations;
+        completions.clear();
+        busyMask.clear();
+        readyMask.clear();
+        fillWaiters.clear();
+        for (int rs = 0; rs < st.size; rs++) {
+            if (!st.busy[rs]) continue;
+            busyMask.set(rs);
+            if (st.startedExecution[rs] && st.completionCycle[rs] > clockCycle) {
+                completions.schedule(st.completionCycle[rs], rs);
+            }
+            // A load or store that started without a completion cycle waits for its block
+            boolean memoryOp = st.unit[rs] == UNIT_LOAD || st.unit[rs] == UNIT_STORE;
+            if (memoryOp && st.startedExecution[rs] && st.completionCycle[rs] == -1) {
+                int blockAddress = st.effectiveAddress[rs] / config.blockSize;
+                List<Integer> waiters = fillWaiters.get(blockAddress);
+                if (waiters == null) {
+                    waiters = new ArrayList<>();
+                    fillWaiters.put(blockAddress, waiters);
                 }
+                waiters.add(rs);
             }
-            
-            // Clear the RS
-            rs.clear();
+            updateReady(rs);
+        }
+        resultCompletions.clear();
+        PhysicalRegisterFile pr = physRegs;
+        for (int p = pr.executing.nextSetBit(0); p >= 0; p = pr.executing.nextSetBit(p + 1)) {
+            if (!pr.completed[p] && pr.completionCycle[p] > clockCycle) {
+                resultCompletions.schedule(pr.completionCycle[p], p);
+            }
+        }
+        dirtyStations.set(0, stations.size);
+    }
+
+    public boolean canStepBack() {
+        return history != null && clockCycle > history.oldestCycle();
+    }
+
+    public void stepBack() {
+        jumpTo(clockCycle - 1);
+    }
+
+    // Moves to any cycle from the start of the history onwards. Going back undoes the
+    // recorded steps one by one; observers are not told, nothing new happened
+    public void jumpTo(int cycle) {
+        if (cycle < clockCycle) {
+            if (history == null) {
+                throw new IllegalStateException("Step-back history is disabled in the configuration");
+            }
+            if (cycle < history.oldestCycle()) {
+                throw new IllegalArgumentException("Cycle " + cycle + " is no longer in the history (oldest is " 
+                                                   + history.oldestCycle() + ")");
+            }
+            int at = clockCycle;
+            while (at > cycle) {
+                at = history.undo();
+            }
+            resumeAt(at);
+        } else {
+            while (clockCycle < cycle && !isDone()) step();
         }
     }
 
     // -------------------------
     // Helpers
     // -------------------------
+    // Static instruction at a byte PC, for labelling timeline rows
+    public Instruction getProgramInstruction(int pcAtIssue) {
+        int index = pcAtIssue / 4;
+        return index >= 0 && index < code.length ? ProgramImage.decode(code[index]) : null;
+    }
+
+    private boolean hasNextInstruction() {
+        return pc >= 0 && pc / 4 < code.length;
+    }
+
+    // Instructions from the PC to the end of the program
+    public int getRemainingInstructions() {
+        return hasNextInstruction() ? code.length - pc / 4 : 0;
+    }
+
+    // Rename, MSHR, port, bank and load speculation counters for the statistics panel
+    public List<String> getStallStats() {
+        List<String> stats = new ArrayList<>();
+        stats.add("Rename stalls (no free physical register): " + physRegs.renameStalls);
+        stats.add("MSHR stalls (every fill buffer busy): " + cache.mshrStalls);
+        if (config.cachePorts > 0 || bankLastAccessCycle.length > 1) {
+            stats.add("Cache port stalls: " + portStalls + ", bank conflicts: " + bankConflicts);
+        }
+        if (memDepPredictor != null) {
+            stats.add("Speculative loads: " + speculativeLoads + ", replays: " + loadReplays);
+            stats.add("Store-set predictions: " + memDepPredictor.predictions 
+                      + ", violations: " + memDepPredictor.violations);
+        }
+        return stats;
+    }
+
     public List<ReservationStation> getAllStations() {
-        List<ReservationStation> all = new ArrayList<>();
-        all.addAll(fpAddStations);
-        all.addAll(fpMulStations);
-        all.addAll(loadBuffers);
-        all.addAll(storeBuffers);
-        return all;
+        return Collections.unmodifiableList(allStations);
+    }
+    
+    // Ids of stations changed since the last call
+    public BitSet drainDirtyStations() {
+        BitSet changed = dirtyStations;
+        dirtyStations = new BitSet();
+        return changed;
     }
 
-    private ReservationStation findFreeStationFor(Instruction.OpCode op) {
-        switch (op) {
-            case ADD_D: case ADD_S: case SUB_D: case SUB_S:
-                for (ReservationStation s : fpAddStations) if (!s.busy) return s;
-                break;
-            case MUL_D: case MUL_S: case DIV_D: case DIV_S:
-                for (ReservationStation s : fpMulStations) if (!s.busy) return s;
-                break;
-            case LW: case LD: case L_S: case L_D:
-                for (ReservationStation s : loadBuffers) if (!s.busy) return s;
-                break;
-            case DADDI: case DSUBI:
-            case BEQ: case BNE:
-                for (ReservationStation s : fpAddStations) if (!s.busy) return s;
-                break;
-            case SW: case SD: case S_S: case S_D:
-                for (ReservationStation s : storeBuffers) if (!s.busy) return s;
-                break;
+    private static Prefetcher createPrefetcher(SimulatorConfig config) {
+        switch (config.prefetcher) {
+            case "nextline":
+                return new NextLinePrefetcher(config.blockSize, config.prefetchDegree, config.prefetchDistance);
+            case "stride":
+                return new StridePrefetcher(config.prefetchTableSize, config.prefetchDegree, config.prefetchDistance);
+            case "stream":
+                return new StreamPrefetcher(config.blockSize, config.prefetchTableSize, 
+                                            config.prefetchDegree, config.prefetchDistance);
             default:
                 return null;
         }
-        return null;
     }
 
-    private void bindSourceToRS(ReservationStation rs, String regName, boolean toVj) {
-        if (regName == null) {
-            if (toVj) { rs.Vj = "0"; rs.Qj = null; }
-            else { rs.Vk = "0"; rs.Qk = null; }
-            return;
-        }
+    // Lowest free station id of the unit that executes op, or -1
+    private int findFreeStationFor(Instruction.OpCode op) {
+        int unit = opUnit[op.ordinal()];
+        int free = busyMask.nextClearBit(unitStart[unit]);
+        return free < unitStart[unit + 1] ? free : -1;
+    }
 
-        RegisterFile.Register r = registers.get(regName);
-        if (r == null) {
-            if (toVj) { rs.Vj = "0"; rs.Qj = null; }
-            else { rs.Vk = "0"; rs.Qk = null; }
-            return;
+    private void bindSourceToRS(int rs, int reg, boolean toVj) {
+        RegisterFile.Register r = reg < 0 ? null : registers.get(reg);
+        int tag = -1;
+        double value = 0;
+        boolean fp = false;
+        
+        if (r != null && r.tag != null) {
+            tag = r.phys;
+        } else if (r != null) {
+            fp = RegisterFile.isFloat(reg);
+            value = fp ? r.value : (int)r.value;
         }
+        
+        if (toVj) { stations.vj[rs] = value; stations.vjFloat[rs] = fp; stations.qj[rs] = tag; }
+        else { stations.vk[rs] = value; stations.vkFloat[rs] = fp; stations.qk[rs] = tag; }
+    }
+    
+    private void bindImmediate(int rs, int immediate) {
+        stations.vk[rs] = immediate;
+        stations.vkFloat[rs] = false;
+        stations.qk[rs] = -1;
+    }
 
-        if (r.tag != null) {
-            if (toVj) { rs.Qj = r.tag; rs.Vj = null; }
-            else { rs.Qk = r.tag; rs.Vk = null; }
-        } else {
-            String valueStr;
-            if (regName.startsWith("R")) {
-                valueStr = Integer.toString((int)r.value);
-            } else {
-                valueStr = Double.toString(r.value);
+    // Unit type and execution latency per opcode, indexed by ordinal. Memory
+    // operations take their latency from the cache instead
+    private void buildOpTables() {
+        for (Instruction.OpCode op : Instruction.OpCode.values()) {
+            int unit;
+            int latency = 1;
+            switch (op.opClass) {
+                case ADD_SUB:
+                    unit = UNIT_ADD;
+                    latency = config.addSubLatency;
+                    break;
+                case MUL:
+                    unit = UNIT_MUL;
+                    latency = config.mulLatency;
+                    break;
+                case DIV:
+                    unit = UNIT_MUL;
+                    latency = config.divLatency;
+                    break;
+                case LOAD:
+                    unit = UNIT_LOAD;
+                    break;
+                case STORE:
+                    unit = UNIT_STORE;
+                    break;
+                case BRANCH:
+                    // Integer ALU and branches have their own pool so loop
+                    // counter updates do not block FP adds from issuing
+                    unit = UNIT_INT;
+                    latency = config.branchLatency;
+                    break;
+                default:
+                    unit = UNIT_INT;
+                    latency = config.intAluLatency;
+                    break;
             }
-            
-            if (toVj) { rs.Vj = valueStr; rs.Qj = null; }
-            else { rs.Vk = valueStr; rs.Qk = null; }
+            opUnit[op.ordinal()] = unit;
+            opLatency[op.ordinal()] = latency;
         }
     }
-
-    private boolean isStore(Instruction.OpCode op) {
-        return op == Instruction.OpCode.SW || op == Instruction.OpCode.SD || 
-               op == Instruction.OpCode.S_S || op == Instruction.OpCode.S_D;
+    
+    // Computes the effective address of every load/store whose base register is
+    // available, and checks newly resolved stores against younger speculative loads
+    private void resolveAddresses() {
+        StationPool st = stations;
+        for (int rs = nextBusy(UNIT_LOAD, unitStart[UNIT_LOAD]); rs >= 0; rs = nextBusy(UNIT_LOAD, rs + 1)) {
+            if (!st.addressKnown[rs] && st.qj[rs] < 0) {
+                changing(rs);
+                st.effectiveAddress[rs] = (int)st.vj[rs] + st.offset[rs];
+                st.addressKnown[rs] = true;
+            }
+        }
+        for (int rs = nextBusy(UNIT_STORE, unitStart[UNIT_STORE]); rs >= 0; rs = nextBusy(UNIT_STORE, rs + 1)) {
+            if (!st.addressKnown[rs] && st.qk[rs] < 0) {
+                changing(rs);
+                st.effectiveAddress[rs] = (int)st.vk[rs] + st.offset[rs];
+                st.addressKnown[rs] = true;
+                checkOrderViolations(rs);
+            }
+        }
     }
-
-    private boolean isLoadOpString(String op) {
-        return op != null && (op.equals("LW") || op.equals("LD") || 
-                             op.equals("L.S") || op.equals("L.D"));
+    
+    // A younger load that already read the address this store writes must be replayed
+    private void checkOrderViolations(int store) {
+        StationPool st = stations;
+        for (int load = nextBusy(UNIT_LOAD, unitStart[UNIT_LOAD]); load >= 0; load = nextBusy(UNIT_LOAD, load + 1)) {
+            if (st.issueSeq[load] < st.issueSeq[store]) continue;
+            if (!st.startedExecution[load] || !st.speculative[load]) continue;
+            if (!addressesOverlap(load, store)) continue;
+            
+            if (memDepPredictor != null) {
+                memDepPredictor.onViolation(st.pcAtIssue[load], st.pcAtIssue[store]);
+            }
+            if (delta != null) delta.stall(load, CycleDelta.StallReason.LOAD_REPLAY, st.effectiveAddress[store]);
+            
+            changing(load);
+            st.startedExecution[load] = false;
+            st.speculative[load] = false;
+            st.latencyRemaining[load] = 0;
+            st.completionCycle[load] = -1;
+            updateReady(load);
+            dirtyStations.set(load);
+            saving(LOAD_REPLAYS, 0, loadReplays);
+            loadReplays++;
+        }
     }
-
-    private boolean isStoreOpString(String op) {
-        return op != null && (op.equals("SW") || op.equals("SD") || 
-                             op.equals("S.S") || op.equals("S.D"));
+    
+    // Returns the older store a load has to wait for: one to the same address, or an
+    // unresolved one the predictor says it depends on (any unresolved one without a predictor)
+    private int findBlockingStore(int load) {
+        StationPool st = stations;
+        for (int earlier = nextBusy(UNIT_STORE, unitStart[UNIT_STORE]); earlier >= 0; earlier = nextBusy(UNIT_STORE, earlier + 1)) {
+            if (st.issueSeq[earlier] > st.issueSeq[load]) continue;
+            
+            if (st.addressKnown[earlier]) {
+                if (addressesOverlap(earlier, load)) return earlier;
+            } else if (memDepPredictor == null || st.issueSeq[earlier] == st.predictedStoreSeq[load]) {
+                return earlier;
+            }
+        }
+        return -1;
     }
-
-    private int latencyForOp(String op) {
-        if (op == null) return 1;
-        if (op.startsWith("MUL")) return config.mulLatency;
-        if (op.startsWith("DIV")) return config.divLatency;
-        if (op.startsWith("ADD") || op.startsWith("SUB")) return config.addSubLatency;
-        if (op.equals("DADDI") || op.equals("DSUBI")) return config.intAluLatency;
-        if (op.startsWith("B")) return config.branchLatency;
-        return 1;
+    
+    // Stores are not speculated: they wait for every older memory operation to
+    // resolve its address and for those to the same address to complete.
+    // Load and store ids are adjacent, so one scan covers both
+    private int findBlockingMemoryOp(int store) {
+        StationPool st = stations;
+        for (int earlier = nextBusy(UNIT_STORE, unitStart[UNIT_LOAD]); earlier >= 0; earlier = nextBusy(UNIT_STORE, earlier + 1)) {
+            if (st.issueSeq[earlier] > st.issueSeq[store]) continue;
+            if (earlier == store) continue;
+            
+            if (!st.addressKnown[earlier] || 
+                addressesOverlap(earlier, store)) {
+                return earlier;
+            }
+        }
+        return -1;
     }
     
-    private boolean hasAddressClash(ReservationStation current, int currentAddr) {
-        List<ReservationStation> all = getAllStations();
-        int currentIndex = all.indexOf(current);
-        
-        // Check all earlier issued instructions
-        for (int i = 0; i < currentIndex; i++) {
-            ReservationStation earlier = all.get(i);
-            if (earlier.busy) {
-                if (isLoadOpString(earlier.op) || isStoreOpString(earlier.op)) {
-                    if (earlier.effectiveAddress != null && earlier.effectiveAddress == currentAddr) {
-                        return true;
-                    }
-                }
+    private boolean hasUnresolvedOlderStore(int load) {
+        StationPool st = stations;
+        for (int earlier = nextBusy(UNIT_STORE, unitStart[UNIT_STORE]); earlier >= 0; earlier = nextBusy(UNIT_STORE, earlier + 1)) {
+            if (st.issueSeq[earlier] < st.issueSeq[load] && !st.addressKnown[earlier]) {
+                return true;
             }
         }
         return false;
     }
-}
\ No newline at end of file
+    
+    // Byte ranges of two resolved accesses intersect; widths come from the opcodes
+    private boolean addressesOverlap(int x, int y) {
+        int a = stations.effectiveAddress[x];
+        int b = stations.effectiveAddress[y];
+        return a < b + stations.op[y].width && b < a + stations.op[x].width;
+    }
+}
@@ -0,0 +1,13 @@
+// A part of a core that records its own fields in the step-back history: it calls
+// SimulationHistory.saveField or saveEntry before overwriting something, and gets the
+// old value back here when the step is undone. field is one of the part's own
+// constants, index the table entry or array element (0 for plain fields)
+public interface Undoable {
+    // Puts back a field saved with saveField
+    default void undoField(int field, int index, long old) {
+    }
+
+    // Puts back an entry or short list saved whole with saveEntry
+    default void undoEntry(int field, int index, int[] old) {
+    }
+}
@@ -0,0 +1,146 @@
+public class VictimCache implements Undoable {
+    private static class Entry {
+        boolean valid;
+        int blockAddress;
+        byte[] data;
+        int lastUse;
+    }
+
+    private Entry[] entries;
+    private int useCounter = 0;
+
+    public int hits = 0;
+    public int swaps = 0;
+    public int insertions = 0;
+
+    // Step-back history, told before anything here changes (null = none)
+    private SimulationHistory history;
+    private static final int USE_COUNTER = 0;
+    private static final int HITS = 1;
+    private static final int SWAPS = 2;
+    private static final int INSERTIONS = 3;
+    private static final int ENTRY = 4;
+
+    public VictimCache(int numEntries, int blockSize) {
+        entries = new Entry[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            entries[i] = new Entry();
+            entries[i].data = new byte[blockSize];
+        }
+    }
+
+    private int find(int blockAddress) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].valid && entries[i].blockAddress == blockAddress) return i;
+        }
+        return -1;
+    }
+
+    public boolean contains(int blockAddress) {
+        return find(blockAddress) >= 0;
+    }
+
+    // Moves a block out of the victim cache into dest at offset (a swap); returns false if it is not here
+    public boolean take(int blockAddress, byte[] dest, int offset) {
+        int i = find(blockAddress);
+        if (i < 0) return false;
+        Entry e = entries[i];
+        System.arraycopy(e.data, 0, dest, offset, e.data.length);
+        changing(i);
+        e.valid = false;
+        saving(SWAPS, swaps);
+        swaps++;
+        return true;
+    }
+
+    // Drops a block without copying it out (coherence invalidation)
+    public boolean remove(int blockAddress) {
+        int i = find(blockAddress);
+        if (i < 0) return false;
+        changing(i);
+        entries[i].valid = false;
+        return true;
+    }
+
+    // A demand access found its block here
+    public void countHit() {
+        saving(HITS, hits);
+        hits++;
+    }
+
+    // Holds a block evicted from the main cache, replacing the least recently inserted one
+    public void insert(int blockAddress, byte[] data, int offset) {
+        int v = 0;
+        for (int i = 0; i < entries.length; i++) {
+            if (!entries[i].valid) { v = i; break; }
+            if (entries[i].lastUse < entries[v].lastUse) v = i;
+        }
+        Entry victim = entries[v];
+        changing(v);
+        victim.valid = true;
+        victim.blockAddress = blockAddress;
+        saving(USE_COUNTER, useCounter);
+        victim.lastUse = ++useCounter;
+        System.arraycopy(data, offset, victim.data, 0, victim.data.length);
+        saving(INSERTIONS, insertions);
+        insertions++;
+    }
+
+    public void invalidate() {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].valid) {
+                changing(i);
+                entries[i].valid = false;
+            }
+        }
+    }
+
+    public void setHistory(SimulationHistory history) {
+        this.history = history;
+    }
+
+    private void saving(int counter, int old) {
+        if (history != null) history.saveField(this, counter, 0, old);
+    }
+
+    // Saves entry i (block bytes packed four to an int) before it changes
+    private void changing(int i) {
+        if (history == null || !history.isRecording()) return;
+        Entry e = entries[i];
+        int[] old = new int[3 + (e.data.length + 3) / 4];
+        old[0] = e.valid ? 1 : 0;
+        old[1] = e.blockAddress;
+        old[2] = e.lastUse;
+        for (int b = 0; b < e.data.length; b++) {
+            old[3 + b / 4] |= (e.data[b] & 0xFF) << (24 - 8 * (b % 4));
+        }
+        history.saveEntry(this, ENTRY, i, old);
+    }
+
+    @Override
+    public void undoField(int field, int index, long old) {
+        int value = (int) old;
+        switch (field) {
+            case USE_COUNTER: useCounter = value; break;
+            case HITS: hits = value; break;
+            case SWAPS: swaps = value; break;
+            case INSERTIONS: insertions = value; break;
+            default: throw new IllegalArgumentException("Unknown field " + field);
+        }
+    }
+
+    @Override
+    public void undoEntry(int field, int i, int[] old) {
+        Entry e = entries[i];
+        e.valid = old[0] != 0;
+        e.blockAddress = old[1];
+        e.lastUse = old[2];
+        for (int b = 0; b < e.data.length; b++) {
+            e.data[b] = (byte) (old[3 + b / 4] >>> (24 - 8 * (b % 4)));
+        }
+    }
+
+    public int size() {
+        return entries.length;
+    }
+}